@@ -16,6 +16,7 @@ import java.net.MalformedURLException;
 import java.nio.file.Paths;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 public class DesktopLauncher extends Application {
     private static final String PROJECT_PAGE = "https://github.com/tepl/dudes";
@@ -28,7 +29,13 @@ public class DesktopLauncher extends Application {
     public void start(Stage primaryStage) {
         Metrics.startReporter();
         Optional<ClientConfig> optional = getClientConfig();
-        optional.ifPresent(clientConfig -> launchApplication(clientConfig.host, clientConfig.port, clientConfig.volume));
+        optional.ifPresent(clientConfig -> launchApplication(
+                clientConfig.host,
+                clientConfig.port,
+                clientConfig.volume,
+                clientConfig.datagrams,
+                clientConfig.interpolationDelay
+        ));
     }
 
     private Optional<ClientConfig> getClientConfig() {
@@ -110,7 +117,13 @@ public class DesktopLauncher extends Application {
                 saveProperties(properties);
 
                 // Return client config
-                return new ClientConfig(strings[0], Integer.valueOf(strings[1]), (float) slider.getValue());
+                return new ClientConfig(
+                        strings[0],
+                        Integer.valueOf(strings[1]),
+                        (float) slider.getValue(),
+                        Boolean.valueOf(properties.getProperty("datagrams", "true")),
+                        Integer.valueOf(properties.getProperty("interpolationDelay", "100"))
+                );
             }
             return null;
         });
@@ -137,15 +150,16 @@ public class DesktopLauncher extends Application {
         }
     }
 
-    private static void launchApplication(String host, int port, float volume) {
+    private static void launchApplication(String host, int port, float volume, boolean datagrams,
+                                          int interpolationDelay) {
         Lwjgl3ApplicationConfiguration config = new Lwjgl3ApplicationConfiguration();
         config.setTitle("Dudes");
         config.setWindowedMode(1280, 720);
         config.setWindowPosition(200, 200);
         config.setWindowIcon(Files.FileType.Internal, "res/icon.png");
         config.setWindowSizeLimits(640, 480, -1, -1);
-        GameClient gameClient = new GameClient(host, port);
-        DudesGame game = new DudesGame(gameClient, volume);
+        GameClient gameClient = new GameClient(host, port, datagrams);
+        DudesGame game = new DudesGame(gameClient, volume, TimeUnit.MILLISECONDS.toNanos(interpolationDelay));
         new Lwjgl3Application(game, config);
         // Lwjgl3Application doesn't call System.exit after the app window is closed
         System.exit(0);
@@ -155,11 +169,16 @@ public class DesktopLauncher extends Application {
         final String host;
         final int port;
         final float volume;
+        final boolean datagrams;
+        // Milliseconds other players are rendered behind the server
+        final int interpolationDelay;
 
-        ClientConfig(String host, int port, float volume) {
+        ClientConfig(String host, int port, float volume, boolean datagrams, int interpolationDelay) {
             this.host = host;
             this.port = port;
             this.volume = volume;
+            this.datagrams = datagrams;
+            this.interpolationDelay = interpolationDelay;
         }
     }
 }
\ No newline at end of file
@@ -6,6 +6,8 @@ import com.badlogic.gdx.Screen;
 import com.codahale.metrics.Timer;
 import com.tearulez.dudes.client.screens.*;
 import com.tearulez.dudes.common.snapshot.StateSnapshot;
+import com.tearulez.dudes.common.snapshot.Wall;
+import com.tearulez.dudes.common.snapshot.WorldState;
 
 import java.util.Arrays;
 import java.util.List;
@@ -14,19 +16,33 @@ import static com.codahale.metrics.MetricRegistry.name;
 
 public class DudesGame extends Game {
     private final GameClient gameClient;
-    private StateSnapshot stateSnapshot = StateSnapshot.empty();
+    private final InterpolationBuffer interpolationBuffer;
     private WorldPresentation worldPresentation = null;
     private ViewportFactory viewportFactory;
     private final SoundSettings soundSettings;
     private final Timer renderTime = Metrics.metrics.timer(name(DudesGame.class, "renderTime"));
 
-    DudesGame(GameClient gameClient, float volume) {
+    DudesGame(GameClient gameClient, float volume, long interpolationDelayNanos) {
         this.gameClient = gameClient;
+        interpolationBuffer = new InterpolationBuffer(interpolationDelayNanos);
         soundSettings = new SoundSettings(volume);
     }
 
-    void onGameStateUpdate(StateSnapshot stateSnapshot) {
-        Gdx.app.postRunnable(() -> this.stateSnapshot = stateSnapshot);
+    void onGameStateUpdate(WorldState world, int playerId, StateSnapshot stateSnapshot) {
+        long receivedNanos = System.nanoTime();
+        Gdx.app.postRunnable(() -> interpolationBuffer.add(world, playerId, stateSnapshot, receivedNanos));
+    }
+
+    // Accessed from the render thread only
+    long getViewTick() {
+        return interpolationBuffer.getViewTick();
+    }
+
+    void onMapData(int mapHash, List<Wall> walls, int ticksPerSecond) {
+        Gdx.app.postRunnable(() -> {
+            interpolationBuffer.setTickRate(ticksPerSecond);
+            worldPresentation.setMap(mapHash, walls);
+        });
     }
 
     private GameScreen createGameScreen() {
@@ -93,7 +109,7 @@ public class DudesGame extends Game {
     public void create() {
         Gdx.input.setCursorCatched(true);
         viewportFactory = new ViewportFactory();
-        worldPresentation = new WorldPresentation(viewportFactory, () -> stateSnapshot, soundSettings);
+        worldPresentation = new WorldPresentation(viewportFactory, () -> gameClient.predict(interpolationBuffer.snapshot(System.nanoTime())), soundSettings);
         gameClient.init(this);
         setScreen(createMainMenuScreen());
     }
@@ -1,31 +1,53 @@
 package com.tearulez.dudes.client;
 
 import com.badlogic.gdx.Gdx;
+import com.tearulez.dudes.common.MessageCodec;
 import com.tearulez.dudes.common.Messages;
 import com.tearulez.dudes.common.networking.Client;
 import com.tearulez.dudes.common.networking.Connection;
+import com.tearulez.dudes.common.networking.DatagramLink;
+import com.tearulez.dudes.common.snapshot.Player;
 import com.tearulez.dudes.common.snapshot.Point;
+import com.tearulez.dudes.common.snapshot.SnapshotDelta;
+import com.tearulez.dudes.common.snapshot.SnapshotHistory;
+import com.tearulez.dudes.common.snapshot.StateSnapshot;
+import com.tearulez.dudes.common.snapshot.WorldState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.List;
+import java.util.Optional;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 class GameClient implements PlayerControls {
     private static final Logger log = LoggerFactory.getLogger(GameClient.class);
+    private static final int MAX_INPUT_FRAMES_PER_FLUSH = 4;
     private final Client client;
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+    private final SnapshotHistory snapshotHistory = new SnapshotHistory();
+    private final Prediction prediction = new Prediction();
     private Connection connection;
+    private DudesGame game;
+    // Inputs of the current frame, accessed from the render thread only
+    private Messages.InputFrame inputFrame = new Messages.InputFrame();
+    private Messages.RotatePlayer lastRotation = null;
+    private int nextInputSequence = 0;
+    // Input frames are sent at the server's tick rate, so each of them stands for one tick.
+    // Zero until the server tells its tick rate
+    private volatile long inputFrameNanos = 0;
+    private long lastFlushTime = 0;
+    private long unsentInputNanos = 0;
 
-    GameClient(String serverHost, int serverPort) {
-        client = new Client(serverHost, serverPort);
+    GameClient(String serverHost, int serverPort, boolean datagrams) {
+        client = new Client(serverHost, serverPort, MessageCodec.create(), datagrams ? DatagramLink.DIRECT : null);
     }
 
     void init(DudesGame game) {
+        this.game = game;
         try {
             connection = client.connect();
         } catch (IOException e) {
@@ -45,11 +67,20 @@ class GameClient implements PlayerControls {
                         game.onPlayerSpawn(spawnResponse.success);
                     }
 
+                    // Static map received
+                    if (message instanceof Messages.MapData) {
+                        Messages.MapData mapData = (Messages.MapData) message;
+                        log.info("onMapData: " + mapData.hash);
+                        prediction.setMap(mapData.walls, 1.0f / mapData.ticksPerSecond);
+                        inputFrameNanos = TimeUnit.SECONDS.toNanos(1) / mapData.ticksPerSecond;
+                        game.onMapData(mapData.hash, mapData.walls, mapData.ticksPerSecond);
+                    }
+
                     // Update received
                     if (message instanceof Messages.UpdateModel) {
                         Messages.UpdateModel updateModel = (Messages.UpdateModel) message;
                         log.trace("onGameStateUpdate");
-                        game.onGameStateUpdate(updateModel.stateSnapshot);
+                        applySnapshotDelta(game, updateModel);
                     }
 
                     // Player died
@@ -65,29 +96,104 @@ class GameClient implements PlayerControls {
         }, 0, 10, TimeUnit.MILLISECONDS);
     }
 
+    private void applySnapshotDelta(DudesGame game, Messages.UpdateModel updateModel) {
+        SnapshotDelta delta = updateModel.snapshotDelta;
+        Optional<WorldState> baseline = snapshotHistory.get(delta.getBaselineTick());
+        if (delta.hasBaseline() && !baseline.isPresent()) {
+            log.warn("Dropping snapshot {}, baseline {} is missing", delta.getTick(), delta.getBaselineTick());
+            return;
+        }
+        WorldState world = delta.apply(baseline);
+        snapshotHistory.add(world);
+        StateSnapshot snapshot = delta.toStateSnapshot(world, updateModel.playerId);
+        prediction.reconcile(snapshot.getPlayer(), updateModel.lastInputSequence);
+        game.onGameStateUpdate(world, updateModel.playerId, snapshot);
+
+        Messages.SnapshotAck ack = new Messages.SnapshotAck();
+        ack.tick = delta.getTick();
+        sendToServer(ack);
+    }
+
     public void movePlayer(float dx, float dy) {
         Messages.MovePlayer movePlayer = new Messages.MovePlayer();
         movePlayer.dx = dx;
         movePlayer.dy = dy;
-        sendToServer(movePlayer);
+        inputFrame.move = movePlayer;
     }
 
     public void rotatePlayer(float angle) {
         Messages.RotatePlayer rotatePlayer = new Messages.RotatePlayer();
         rotatePlayer.angle = angle;
-        sendToServer(rotatePlayer);
+        inputFrame.rotation = rotatePlayer;
+        lastRotation = rotatePlayer;
     }
 
     public void shootAt(float x, float y) {
         Messages.ShootAt shootAt = new Messages.ShootAt();
         shootAt.x = x;
         shootAt.y = y;
-        sendToServer(shootAt);
+        shootAt.viewTick = game.getViewTick();
+        inputFrame.shot = shootAt;
     }
 
     @Override
     public void reload() {
-        sendToServer(new Messages.Reload());
+        inputFrame.reload = true;
+    }
+
+    /**
+     * Sends the gathered inputs as one input frame per simulation step elapsed since the previous call.
+     * Renders faster than the simulation keep gathering until a step has elapsed.
+     * Every frame carries the latest rotation, so a lost frame is made up for by the next one.
+     * Frames with a shot or a reload are the exception, they are sent reliably.
+     */
+    @Override
+    public void flushInputs() {
+        long frameNanos = inputFrameNanos;
+        long now = System.nanoTime();
+        if (lastFlushTime != 0) {
+            unsentInputNanos = Math.min(
+                    unsentInputNanos + now - lastFlushTime,
+                    MAX_INPUT_FRAMES_PER_FLUSH * frameNanos
+            );
+        }
+        lastFlushTime = now;
+        if (frameNanos == 0 || unsentInputNanos < frameNanos) {
+            return;
+        }
+        Messages.InputFrame frame = inputFrame;
+        frame.rotation = lastRotation;
+        while (unsentInputNanos >= frameNanos) {
+            unsentInputNanos -= frameNanos;
+            frame.sequence = nextInputSequence;
+            nextInputSequence += 1;
+            prediction.applyInput(frame.sequence, frame.move);
+            sendToServer(frame, isReplaceable(frame));
+            // Shots and reloads happen once, movement lasts for every step
+            frame.shot = null;
+            frame.reload = false;
+        }
+        inputFrame = new Messages.InputFrame();
+    }
+
+    /**
+     * Shots and reloads happen once and are not repeated by the next frame,
+     * so a frame carrying one must be neither lost as a datagram nor replaced in a congested queue.
+     */
+    static boolean isReplaceable(Messages.InputFrame frame) {
+        return frame.shot == null && !frame.reload;
+    }
+
+    /**
+     * @return the snapshot with the local player moved to its predicted position and facing the latest rotation
+     */
+    StateSnapshot predict(StateSnapshot snapshot) {
+        if (!snapshot.getPlayer().isPresent()) {
+            return snapshot;
+        }
+        Player player = prediction.predict(snapshot.getPlayer().get());
+        float angle = lastRotation != null ? lastRotation.angle : player.getAngle();
+        return snapshot.withPlayer(Player.create(player.getPosition(), player.getVelocity(), angle, player.getHealth()));
     }
 
     void spawnAt(Point point) {
@@ -96,9 +202,13 @@ class GameClient implements PlayerControls {
         sendToServer(spawnRequest);
     }
 
-    private void sendToServer(Serializable movePlayer) {
+    private void sendToServer(Serializable message) {
+        sendToServer(message, false);
+    }
+
+    private void sendToServer(Serializable message, boolean replaceable) {
         try {
-            connection.send(movePlayer);
+            connection.send(message, replaceable);
         } catch (IOException e) {
             e.printStackTrace();
             Gdx.app.exit();
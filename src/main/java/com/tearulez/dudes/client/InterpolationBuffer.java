@@ -0,0 +1,255 @@
+package com.tearulez.dudes.client;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import com.codahale.metrics.Counter;
+import com.tearulez.dudes.common.snapshot.Player;
+import com.tearulez.dudes.common.snapshot.Point;
+import com.tearulez.dudes.common.snapshot.StateSnapshot;
+import com.tearulez.dudes.common.snapshot.WorldState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Received snapshots, stamped with the server time of their tick.
+ * Other players and bullets are rendered a fixed delay behind the estimated server time,
+ * interpolated between the two snapshots around it, so jitter in the arrival of snapshots does not show on screen.
+ * When no snapshot arrived in time, they are extrapolated for a short while.
+ * The local player and the events are taken from the newest snapshot, they should not wait for the delay.
+ * Accessed from the render thread only.
+ */
+class InterpolationBuffer {
+    private static final int CAPACITY = 32;
+    private static final long MAX_EXTRAPOLATION_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+    // A new sample moves the server clock estimate by this fraction of its error
+    private static final int CLOCK_SMOOTHING = 16;
+    // An error larger than that means another server or a long stall, the buffer starts over
+    private static final long CLOCK_RESET_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static class Entry {
+        final long time;
+        final WorldState world;
+        final int playerId;
+        final StateSnapshot snapshot;
+
+        Entry(long time, WorldState world, int playerId, StateSnapshot snapshot) {
+            this.time = time;
+            this.world = world;
+            this.playerId = playerId;
+            this.snapshot = snapshot;
+        }
+    }
+
+    private final long delayNanos;
+    // Duration of a server tick, zero until the server tells its tick rate
+    private long tickNanos = 0;
+    private final Entry[] entries = new Entry[CAPACITY];
+    private int first = 0;
+    private int count = 0;
+    // Server time minus local time, null until the first snapshot
+    private Long clockOffset = null;
+    private long renderedTime = Long.MIN_VALUE;
+    // Tick closest to what was rendered last, zero before the first render
+    private long viewTick = 0;
+    private boolean underrun = false;
+    // Events of the snapshots received since the last render
+    private boolean wasDryFire = false;
+    private boolean wasReload = false;
+    private boolean wasShot = false;
+
+    private final Counter underruns = Metrics.metrics.counter(name(InterpolationBuffer.class, "underruns"));
+    private final Counter overruns = Metrics.metrics.counter(name(InterpolationBuffer.class, "overruns"));
+
+    InterpolationBuffer(long delayNanos) {
+        this.delayNanos = delayNanos;
+    }
+
+    /**
+     * Sets the tick rate of the server the snapshots come from and drops the snapshots received so far.
+     */
+    void setTickRate(int ticksPerSecond) {
+        tickNanos = TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+        clockOffset = null;
+        first = 0;
+        count = 0;
+    }
+
+    void add(WorldState world, int playerId, StateSnapshot snapshot, long receivedNanos) {
+        if (tickNanos == 0) {
+            return;
+        }
+        long time = world.getTick() * tickNanos;
+        long sample = time - receivedNanos;
+        if (clockOffset == null || Math.abs(sample - clockOffset) > CLOCK_RESET_NANOS) {
+            clockOffset = sample;
+            first = 0;
+            count = 0;
+            renderedTime = Long.MIN_VALUE;
+        } else {
+            if (count > 0 && time <= newest().time) {
+                return;
+            }
+            clockOffset += (sample - clockOffset) / CLOCK_SMOOTHING;
+        }
+        if (count == CAPACITY) {
+            if (entries[first].time > renderedTime) {
+                // Snapshots come faster than they are rendered
+                overruns.inc();
+            }
+            first = (first + 1) % CAPACITY;
+            count -= 1;
+        }
+        entries[(first + count) % CAPACITY] = new Entry(time, world, playerId, snapshot);
+        count += 1;
+        wasDryFire |= snapshot.wasDryFire();
+        wasReload |= snapshot.wasReload();
+        wasShot |= snapshot.wasShot();
+    }
+
+    /**
+     * @return the state to render at the given local time
+     */
+    StateSnapshot snapshot(long nowNanos) {
+        if (count == 0) {
+            return StateSnapshot.empty();
+        }
+        long renderTime = nowNanos + clockOffset - delayNanos;
+        // The last snapshot not after the render time, it stays in the buffer while it is needed
+        int previous = -1;
+        while (previous + 1 < count && get(previous + 1).time <= renderTime) {
+            previous += 1;
+        }
+        if (previous > 0) {
+            first = (first + previous) % CAPACITY;
+            count -= previous;
+            previous = 0;
+        }
+        renderedTime = Math.max(renderedTime, renderTime);
+        long renderTick = Math.round((double) renderTime / tickNanos);
+        viewTick = Math.max(get(0).time / tickNanos, Math.min(newest().time / tickNanos, renderTick));
+
+        List<Player> otherPlayers;
+        List<Point> bullets;
+        if (previous == -1) {
+            // Nothing to interpolate from yet
+            Entry oldest = get(0);
+            otherPlayers = otherPlayers(oldest);
+            bullets = new ArrayList<>(oldest.world.getBullets().values());
+        } else if (count == 1) {
+            if (!underrun) {
+                underrun = true;
+                underruns.inc();
+            }
+            otherPlayers = extrapolatePlayers(get(0), Math.min(renderTime - get(0).time, MAX_EXTRAPOLATION_NANOS));
+            bullets = new ArrayList<>(get(0).world.getBullets().values());
+        } else {
+            underrun = false;
+            Entry from = get(0);
+            Entry to = get(1);
+            float progress = (float) (renderTime - from.time) / (to.time - from.time);
+            otherPlayers = interpolatePlayers(from, to, progress);
+            bullets = interpolateBullets(from, to, progress);
+        }
+
+        StateSnapshot newest = newest().snapshot;
+        StateSnapshot state = StateSnapshot.create(
+                newest.getPlayer(),
+                otherPlayers,
+                newest.getMapHash(),
+                bullets,
+                wasDryFire,
+                wasReload,
+                wasShot,
+                newest.getBulletRadius(),
+                newest.getPlayerRadius()
+        );
+        wasDryFire = false;
+        wasReload = false;
+        wasShot = false;
+        return state;
+    }
+
+    /**
+     * @return the server tick of the other players' positions rendered last, zero if nothing was rendered
+     */
+    long getViewTick() {
+        return viewTick;
+    }
+
+    private Entry get(int index) {
+        return entries[(first + index) % CAPACITY];
+    }
+
+    private Entry newest() {
+        return get(count - 1);
+    }
+
+    private static List<Player> otherPlayers(Entry entry) {
+        List<Player> players = new ArrayList<>();
+        entry.world.getPlayers().forEach((id, player) -> {
+            if (id != entry.playerId) {
+                players.add(player);
+            }
+        });
+        return players;
+    }
+
+    private static List<Player> interpolatePlayers(Entry from, Entry to, float progress) {
+        List<Player> players = new ArrayList<>();
+        to.world.getPlayers().forEach((id, player) -> {
+            if (id == to.playerId) {
+                return;
+            }
+            Player previous = from.world.getPlayers().get(id);
+            if (previous == null) {
+                players.add(player);
+                return;
+            }
+            players.add(Player.create(
+                    lerp(previous.getPosition(), player.getPosition(), progress),
+                    player.getVelocity(),
+                    MathUtils.lerpAngle(previous.getAngle(), player.getAngle(), progress),
+                    player.getHealth()
+            ));
+        });
+        return players;
+    }
+
+    private static List<Player> extrapolatePlayers(Entry entry, long nanos) {
+        float seconds = nanos / 1e9f;
+        List<Player> players = new ArrayList<>();
+        entry.world.getPlayers().forEach((id, player) -> {
+            if (id == entry.playerId) {
+                return;
+            }
+            Vector2 position = player.getPosition().asVector().mulAdd(player.getVelocity(), seconds);
+            players.add(Player.create(
+                    Point.create(position.x, position.y),
+                    player.getVelocity(),
+                    player.getAngle(),
+                    player.getHealth()
+            ));
+        });
+        return players;
+    }
+
+    private static List<Point> interpolateBullets(Entry from, Entry to, float progress) {
+        List<Point> bullets = new ArrayList<>();
+        to.world.getBullets().forEach((id, bullet) -> {
+            Point previous = from.world.getBullets().get(id);
+            bullets.add(previous != null ? lerp(previous, bullet, progress) : bullet);
+        });
+        return bullets;
+    }
+
+    private static Point lerp(Point from, Point to, float progress) {
+        return Point.create(
+                MathUtils.lerp(from.x, to.x, progress),
+                MathUtils.lerp(from.y, to.y, progress)
+        );
+    }
+}
@@ -8,4 +8,7 @@ public interface PlayerControls {
     void shootAt(float x, float y);
 
     void reload();
+
+    // Sends the inputs gathered since the previous call, called once per rendered frame
+    void flushInputs();
 }
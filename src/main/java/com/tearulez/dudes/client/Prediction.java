@@ -0,0 +1,128 @@
+package com.tearulez.dudes.client;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.physics.box2d.World;
+import com.tearulez.dudes.common.Messages;
+import com.tearulez.dudes.common.Physics;
+import com.tearulez.dudes.common.snapshot.Player;
+import com.tearulez.dudes.common.snapshot.Point;
+import com.tearulez.dudes.common.snapshot.Wall;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Predicts the local player's movement from its own inputs, so it moves without waiting for the server.
+ * Runs the server's movement against the map walls, one step per input frame.
+ * When a snapshot arrives, the player is put where the server had it after the last input frame it processed,
+ * and the input frames the server has not processed yet are replayed on top.
+ * Collisions with other players and bullets are not predicted, the next snapshot corrects them.
+ */
+class Prediction {
+    // Inputs not processed by the server yet, about two seconds worth
+    private static final int MAX_PENDING_INPUTS = 128;
+
+    private final int[] sequences = new int[MAX_PENDING_INPUTS];
+    private final float[] moveX = new float[MAX_PENDING_INPUTS];
+    private final float[] moveY = new float[MAX_PENDING_INPUTS];
+    private final boolean[] moving = new boolean[MAX_PENDING_INPUTS];
+    private int first = 0;
+    private int count = 0;
+    private final Messages.MovePlayer move = new Messages.MovePlayer();
+
+    private World world = null;
+    private float timeStep;
+    // Null while the local player is not spawned
+    private Body body = null;
+
+    synchronized void setMap(List<Wall> walls, float timeStep) {
+        this.timeStep = timeStep;
+        if (world != null) {
+            world.dispose();
+        }
+        world = Physics.createWorld(walls);
+        body = null;
+    }
+
+    /**
+     * Records an input frame and moves the player by it.
+     *
+     * @param frameMove the frame's move or null if the player does not move
+     */
+    synchronized void applyInput(int sequence, Messages.MovePlayer frameMove) {
+        if (count == MAX_PENDING_INPUTS) {
+            // The server is far behind, the oldest input is not worth replaying anymore
+            first = (first + 1) % MAX_PENDING_INPUTS;
+            count -= 1;
+        }
+        int index = (first + count) % MAX_PENDING_INPUTS;
+        sequences[index] = sequence;
+        moving[index] = frameMove != null;
+        if (frameMove != null) {
+            moveX[index] = frameMove.dx;
+            moveY[index] = frameMove.dy;
+        }
+        count += 1;
+        if (body != null) {
+            step(index);
+        }
+    }
+
+    /**
+     * Moves the player to its authoritative state and replays the inputs the server has not processed.
+     */
+    synchronized void reconcile(Optional<Player> player, int lastProcessedSequence) {
+        while (count > 0 && sequences[first] - lastProcessedSequence <= 0) {
+            first = (first + 1) % MAX_PENDING_INPUTS;
+            count -= 1;
+        }
+        if (world == null) {
+            return;
+        }
+        if (!player.isPresent()) {
+            if (body != null) {
+                world.destroyBody(body);
+                body = null;
+            }
+            return;
+        }
+        Point position = player.get().getPosition();
+        if (body == null) {
+            body = Physics.createCircleBody(world, Physics.PLAYER_CIRCLE_RADIUS, position.asVector());
+        }
+        body.setTransform(position.x, position.y, 0);
+        body.setLinearVelocity(player.get().getVelocity());
+        body.setAwake(true);
+        for (int i = 0; i < count; i++) {
+            step((first + i) % MAX_PENDING_INPUTS);
+        }
+    }
+
+    /**
+     * @return the predicted player, or the given one if there is no prediction
+     */
+    synchronized Player predict(Player player) {
+        if (body == null) {
+            return player;
+        }
+        Vector2 position = body.getPosition();
+        return Player.create(
+                Point.create(position.x, position.y),
+                body.getLinearVelocity().cpy(),
+                player.getAngle(),
+                player.getHealth()
+        );
+    }
+
+    private void step(int index) {
+        Messages.MovePlayer frameMove = null;
+        if (moving[index]) {
+            move.dx = moveX[index];
+            move.dy = moveY[index];
+            frameMove = move;
+        }
+        Physics.applyMove(body, frameMove);
+        Physics.step(world, timeStep);
+    }
+}
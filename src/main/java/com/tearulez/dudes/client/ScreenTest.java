@@ -20,13 +20,16 @@ public class ScreenTest {
         config.setWindowSizeLimits(800, -1, 480, -1);
         ViewportFactory viewportFactory = new ViewportFactory();
         List<Wall> walls = new SvgMap(new File("maps/map.svg")).getWalls();
-        StateSnapshot snapshot = new StateSnapshot.Builder().setWalls(walls).build();
+        StateSnapshot snapshot = new StateSnapshot.Builder().setMapHash(walls.hashCode()).build();
         Game game = new Game() {
             @Override
             public void create() {
+                WorldPresentation worldPresentation =
+                        new WorldPresentation(viewportFactory, () -> snapshot, new SoundSettings(0));
+                worldPresentation.setMap(walls.hashCode(), walls);
                 setScreen(new SpawnScreen(
                         viewportFactory,
-                        new WorldPresentation(viewportFactory, () -> snapshot, new SoundSettings(0)),
+                        worldPresentation,
                         () -> {
                         },
                         point -> {
@@ -90,6 +90,7 @@ public class GameScreen extends ScreenAdapter {
             Point target = worldPresentation.convertScreenToWorld(p.x, p.y);
             playerControls.shootAt(target.x, target.y);
         }
+        playerControls.flushInputs();
     }
 
     private void renderCrosshairs() {
@@ -20,6 +20,7 @@ import com.tearulez.dudes.common.snapshot.Point;
 import com.tearulez.dudes.common.snapshot.StateSnapshot;
 import com.tearulez.dudes.common.snapshot.Wall;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
@@ -46,6 +47,10 @@ public class WorldPresentation {
     private PolygonSpriteBatch polyBatch = new PolygonSpriteBatch();
     private EarClippingTriangulator triangulator;
 
+    // Map
+    private int mapHash = 0;
+    private List<WallRegion> wallRegions = new ArrayList<>();
+
     public WorldPresentation(ViewportFactory viewportFactory, GameState state, SoundSettings soundSettings) {
         viewport = viewportFactory.createViewport(VIEWPORT_HEIGHT);
         this.state = state;
@@ -57,6 +62,24 @@ public class WorldPresentation {
         wallTex.getTexture().setWrap(Texture.TextureWrap.Repeat, Texture.TextureWrap.Repeat);
     }
 
+    public void setMap(int mapHash, List<Wall> walls) {
+        List<WallRegion> regions = new ArrayList<>();
+        for (Wall wall : walls) {
+            int size = wall.getPoints().size();
+            float[] vertices = new float[size * 2];
+            for (int i = 0; i < size; i++) {
+                Point point = wall.getPoints().get(i);
+                vertices[i * 2] = point.x;
+                vertices[i * 2 + 1] = point.y;
+            }
+            PolygonRegion polyReg = new PolygonRegion(wallTex, vertices, triangulator.computeTriangles(vertices).toArray());
+            computeTextureCoords(polyReg);
+            regions.add(new WallRegion(polyReg, wall.getPosition()));
+        }
+        this.mapHash = mapHash;
+        this.wallRegions = regions;
+    }
+
     void resize(int width, int height) {
         viewport.update(width, height);
     }
@@ -74,7 +97,9 @@ public class WorldPresentation {
         polyBatch.setProjectionMatrix(cam.combined);
 
         renderBackground();
-        renderWalls(stateSnapshot.getWalls());
+        if (stateSnapshot.getMapHash() == mapHash) {
+            renderWalls();
+        }
         renderPlayers(stateSnapshot.getPlayer(), stateSnapshot.getOtherPlayers(), stateSnapshot.getPlayerRadius());
         renderBullets(stateSnapshot.getBullets(), stateSnapshot.getBulletRadius());
         playSounds(stateSnapshot);
@@ -165,20 +190,10 @@ public class WorldPresentation {
         shapeRenderer.rect(p.x - r, p.y + r, 2 * r * f, r / 4);
     }
 
-    private void renderWalls(List<Wall> walls) {
+    private void renderWalls() {
         polyBatch.begin();
-        for (Wall wall : walls) {
-            int size = wall.getPoints().size();
-            float[] vertices = new float[size * 2];
-            for (int i = 0; i < size; i++) {
-                Point point = wall.getPoints().get(i);
-                vertices[i * 2] = point.x;
-                vertices[i * 2 + 1] = point.y;
-            }
-            PolygonRegion polyReg = new PolygonRegion(wallTex, vertices, triangulator.computeTriangles(vertices).toArray());
-            computeTextureCoords(polyReg);
-            Point position = wall.getPosition();
-            polyBatch.draw(polyReg, position.x, position.y);
+        for (WallRegion wallRegion : wallRegions) {
+            polyBatch.draw(wallRegion.region, wallRegion.position.x, wallRegion.position.y);
         }
         polyBatch.end();
     }
@@ -216,4 +231,14 @@ public class WorldPresentation {
     void translate(float dx, float dy) {
         viewport.getCamera().translate(dx, dy, 0);
     }
+
+    private static class WallRegion {
+        final PolygonRegion region;
+        final Point position;
+
+        WallRegion(PolygonRegion region, Point position) {
+            this.region = region;
+            this.position = position;
+        }
+    }
 }
@@ -0,0 +1,525 @@
+package com.tearulez.dudes.common;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.IntIntMap;
+import com.tearulez.dudes.common.networking.BinaryCodec;
+import com.tearulez.dudes.common.snapshot.Player;
+import com.tearulez.dudes.common.snapshot.Point;
+import com.tearulez.dudes.common.snapshot.Quantization;
+import com.tearulez.dudes.common.snapshot.SnapshotDelta;
+import com.tearulez.dudes.common.snapshot.StateSnapshot;
+import com.tearulez.dudes.common.snapshot.Wall;
+import com.tearulez.dudes.common.snapshot.WorldState;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Binary codec for {@link Messages} and snapshot classes.
+ * Primitive fields are written with fixed width, lists are prefixed with their size.
+ */
+public class MessageCodec {
+    public static final byte ID = 1;
+
+    // Messages
+    private static final int SPAWN_RESPONSE = 1;
+    private static final int UPDATE_MODEL = 2;
+    private static final int PLAYER_DEATH = 3;
+    private static final int MOVE_PLAYER = 4;
+    private static final int ROTATE_PLAYER = 5;
+    private static final int SHOOT_AT = 6;
+    private static final int SPAWN_REQUEST = 7;
+    private static final int RELOAD = 8;
+    private static final int MAP_DATA = 9;
+    private static final int SNAPSHOT_ACK = 10;
+    private static final int INPUT_FRAME = 11;
+
+    // Snapshot
+    private static final int POINT = 16;
+    private static final int PLAYER = 17;
+    private static final int WALL = 18;
+    private static final int STATE_SNAPSHOT = 19;
+
+    private MessageCodec() {
+    }
+
+    public static BinaryCodec create() {
+        return new BinaryCodec(ID)
+                .register(SPAWN_RESPONSE, Messages.SpawnResponse.class,
+                        (msg, out) -> out.writeBoolean(msg.success),
+                        in -> {
+                            Messages.SpawnResponse msg = new Messages.SpawnResponse();
+                            msg.success = in.readBoolean();
+                            return msg;
+                        })
+                .register(UPDATE_MODEL, Messages.UpdateModel.class,
+                        (msg, out) -> {
+                            writeVarInt(msg.playerId, out);
+                            writeVarInt(msg.lastInputSequence, out);
+                            writeSnapshotDelta(msg.snapshotDelta, SnapshotRecords.of(msg.snapshotDelta), out);
+                        },
+                        in -> {
+                            Messages.UpdateModel msg = new Messages.UpdateModel();
+                            msg.playerId = readVarInt(in);
+                            msg.lastInputSequence = readVarInt(in);
+                            msg.snapshotDelta = readSnapshotDelta(in);
+                            return msg;
+                        })
+                .register(PLAYER_DEATH, Messages.PlayerDeath.class,
+                        (msg, out) -> {
+                        },
+                        in -> new Messages.PlayerDeath())
+                .register(MOVE_PLAYER, Messages.MovePlayer.class,
+                        (msg, out) -> {
+                            out.writeFloat(msg.dx);
+                            out.writeFloat(msg.dy);
+                        },
+                        in -> {
+                            Messages.MovePlayer msg = new Messages.MovePlayer();
+                            msg.dx = in.readFloat();
+                            msg.dy = in.readFloat();
+                            return msg;
+                        })
+                .register(ROTATE_PLAYER, Messages.RotatePlayer.class,
+                        (msg, out) -> out.writeFloat(msg.angle),
+                        in -> {
+                            Messages.RotatePlayer msg = new Messages.RotatePlayer();
+                            msg.angle = in.readFloat();
+                            return msg;
+                        })
+                .register(SHOOT_AT, Messages.ShootAt.class,
+                        (msg, out) -> {
+                            out.writeFloat(msg.x);
+                            out.writeFloat(msg.y);
+                            out.writeLong(msg.viewTick);
+                        },
+                        in -> {
+                            Messages.ShootAt msg = new Messages.ShootAt();
+                            msg.x = in.readFloat();
+                            msg.y = in.readFloat();
+                            msg.viewTick = in.readLong();
+                            return msg;
+                        })
+                .register(SPAWN_REQUEST, Messages.SpawnRequest.class,
+                        (msg, out) -> writePoint(msg.startingPosition, out),
+                        in -> {
+                            Messages.SpawnRequest msg = new Messages.SpawnRequest();
+                            msg.startingPosition = readPoint(in);
+                            return msg;
+                        })
+                .register(RELOAD, Messages.Reload.class,
+                        (msg, out) -> {
+                        },
+                        in -> new Messages.Reload())
+                .register(MAP_DATA, Messages.MapData.class,
+                        (msg, out) -> {
+                            out.writeInt(msg.hash);
+                            writeList(msg.walls, MessageCodec::writeWall, out);
+                            writeVarInt(msg.ticksPerSecond, out);
+                        },
+                        in -> {
+                            Messages.MapData msg = new Messages.MapData();
+                            msg.hash = in.readInt();
+                            msg.walls = readList(MessageCodec::readWall, in);
+                            msg.ticksPerSecond = readVarInt(in);
+                            return msg;
+                        })
+                .register(SNAPSHOT_ACK, Messages.SnapshotAck.class,
+                        (msg, out) -> out.writeLong(msg.tick),
+                        in -> {
+                            Messages.SnapshotAck msg = new Messages.SnapshotAck();
+                            msg.tick = in.readLong();
+                            return msg;
+                        })
+                .register(INPUT_FRAME, Messages.InputFrame.class,
+                        MessageCodec::writeInputFrame,
+                        MessageCodec::readInputFrame)
+                .register(POINT, Point.class, MessageCodec::writePoint, MessageCodec::readPoint)
+                .register(PLAYER, Player.class, MessageCodec::writePlayer, MessageCodec::readPlayer)
+                .register(WALL, Wall.class, MessageCodec::writeWall, MessageCodec::readWall)
+                .register(STATE_SNAPSHOT, StateSnapshot.class, MessageCodec::writeStateSnapshot, MessageCodec::readStateSnapshot);
+    }
+
+    // Input frames: a flags byte tells which inputs follow
+
+    private static final int MOVE_INPUT = 1;
+    private static final int ROTATION_INPUT = 1 << 1;
+    private static final int SHOT_INPUT = 1 << 2;
+    private static final int RELOAD_INPUT = 1 << 3;
+
+    private static void writeInputFrame(Messages.InputFrame msg, DataOutputStream out) throws IOException {
+        writeVarInt(msg.sequence, out);
+        int flags = (msg.move != null ? MOVE_INPUT : 0)
+                | (msg.rotation != null ? ROTATION_INPUT : 0)
+                | (msg.shot != null ? SHOT_INPUT : 0)
+                | (msg.reload ? RELOAD_INPUT : 0);
+        out.writeByte(flags);
+        if (msg.move != null) {
+            out.writeFloat(msg.move.dx);
+            out.writeFloat(msg.move.dy);
+        }
+        if (msg.rotation != null) {
+            out.writeShort(Quantization.toAngleUnits(msg.rotation.angle));
+        }
+        if (msg.shot != null) {
+            out.writeFloat(msg.shot.x);
+            out.writeFloat(msg.shot.y);
+            out.writeLong(msg.shot.viewTick);
+        }
+    }
+
+    private static Messages.InputFrame readInputFrame(DataInputStream in) throws IOException {
+        Messages.InputFrame msg = new Messages.InputFrame();
+        msg.sequence = readVarInt(in);
+        int flags = in.readByte();
+        if ((flags & MOVE_INPUT) != 0) {
+            msg.move = new Messages.MovePlayer();
+            msg.move.dx = in.readFloat();
+            msg.move.dy = in.readFloat();
+        }
+        if ((flags & ROTATION_INPUT) != 0) {
+            msg.rotation = new Messages.RotatePlayer();
+            msg.rotation.angle = Quantization.fromAngleUnits(in.readUnsignedShort());
+        }
+        if ((flags & SHOT_INPUT) != 0) {
+            msg.shot = new Messages.ShootAt();
+            msg.shot.x = in.readFloat();
+            msg.shot.y = in.readFloat();
+            msg.shot.viewTick = in.readLong();
+        }
+        msg.reload = (flags & RELOAD_INPUT) != 0;
+        return msg;
+    }
+
+    private static void writePoint(Point point, DataOutputStream out) throws IOException {
+        out.writeFloat(point.x);
+        out.writeFloat(point.y);
+    }
+
+    private static Point readPoint(DataInputStream in) throws IOException {
+        float x = in.readFloat();
+        float y = in.readFloat();
+        return Point.create(x, y);
+    }
+
+    private static void writePlayer(Player player, DataOutputStream out) throws IOException {
+        writePoint(player.getPosition(), out);
+        Vector2 velocity = player.getVelocity();
+        out.writeFloat(velocity.x);
+        out.writeFloat(velocity.y);
+        out.writeFloat(player.getAngle());
+        out.writeInt(player.getHealth());
+    }
+
+    private static Player readPlayer(DataInputStream in) throws IOException {
+        Point position = readPoint(in);
+        float vx = in.readFloat();
+        float vy = in.readFloat();
+        float angle = in.readFloat();
+        int health = in.readInt();
+        return Player.create(position, new Vector2(vx, vy), angle, health);
+    }
+
+    private static void writeWall(Wall wall, DataOutputStream out) throws IOException {
+        writePoint(wall.getPosition(), out);
+        writeList(wall.getPoints(), MessageCodec::writePoint, out);
+    }
+
+    private static Wall readWall(DataInputStream in) throws IOException {
+        Point position = readPoint(in);
+        List<Point> points = readList(MessageCodec::readPoint, in);
+        return Wall.create(position, points);
+    }
+
+    private static void writeStateSnapshot(StateSnapshot snapshot, DataOutputStream out) throws IOException {
+        Optional<Player> player = snapshot.getPlayer();
+        out.writeBoolean(player.isPresent());
+        if (player.isPresent()) {
+            writePlayer(player.get(), out);
+        }
+        writeList(snapshot.getOtherPlayers(), MessageCodec::writePlayer, out);
+        out.writeInt(snapshot.getMapHash());
+        writeList(snapshot.getBullets(), MessageCodec::writePoint, out);
+        out.writeBoolean(snapshot.wasDryFire());
+        out.writeBoolean(snapshot.wasReload());
+        out.writeBoolean(snapshot.wasShot());
+        out.writeFloat(snapshot.getBulletRadius());
+        out.writeFloat(snapshot.getPlayerRadius());
+    }
+
+    private static StateSnapshot readStateSnapshot(DataInputStream in) throws IOException {
+        Optional<Player> player = in.readBoolean() ? Optional.of(readPlayer(in)) : Optional.empty();
+        List<Player> otherPlayers = readList(MessageCodec::readPlayer, in);
+        int mapHash = in.readInt();
+        List<Point> bullets = readList(MessageCodec::readPoint, in);
+        boolean wasDryFire = in.readBoolean();
+        boolean wasReload = in.readBoolean();
+        boolean wasShot = in.readBoolean();
+        float bulletRadius = in.readFloat();
+        float playerRadius = in.readFloat();
+        return StateSnapshot.create(
+                player,
+                otherPlayers,
+                mapHash,
+                bullets,
+                wasDryFire,
+                wasReload,
+                wasShot,
+                bulletRadius,
+                playerRadius
+        );
+    }
+
+    /**
+     * Writes the recipient specific part of an {@link Messages.UpdateModel}, ignoring its delta.
+     * Followed by a delta encoded with {@link #encodeSnapshotDelta}, it forms the same frame
+     * payload as an encoded UpdateModel message.
+     */
+    public static final BinaryCodec.Writer<Messages.UpdateModel> UPDATE_MODEL_HEADER = (msg, out) -> {
+        out.writeByte(UPDATE_MODEL);
+        writeVarInt(msg.playerId, out);
+        writeVarInt(msg.lastInputSequence, out);
+    };
+
+    public static ByteBuffer encodeSnapshotDelta(SnapshotDelta delta) throws IOException {
+        return encodeSnapshotDelta(delta, SnapshotRecords.of(delta));
+    }
+
+    /**
+     * Encodes a delta whose changed entities are copied from the given records rather than encoded again.
+     */
+    public static ByteBuffer encodeSnapshotDelta(SnapshotDelta delta, SnapshotRecords records) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        writeSnapshotDelta(delta, records, out);
+        out.flush();
+        return ByteBuffer.wrap(buffer.toByteArray());
+    }
+
+    /**
+     * Players and bullets of one tick's world state, each encoded once together with its id.
+     * A view of the world holds the same entities, so the deltas of all views of that tick are assembled
+     * from these records and an entity is encoded once whatever the number of recipients that see it.
+     * Immutable, deltas may be assembled from several threads.
+     */
+    public static class SnapshotRecords {
+        private final byte[] bytes;
+        // Index of the record of each entity by id, records are numbered players first
+        private final IntIntMap playerRecords = new IntIntMap();
+        private final IntIntMap bulletRecords = new IntIntMap();
+        // Record i takes the bytes from offsets[i] to offsets[i + 1]
+        private final int[] offsets;
+
+        public SnapshotRecords(WorldState world) throws IOException {
+            this(world.getPlayers(), world.getBullets());
+        }
+
+        private SnapshotRecords(Map<Integer, Player> players, Map<Integer, Point> bullets) throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(buffer);
+            offsets = new int[players.size() + bullets.size() + 1];
+            int record = 0;
+            for (Map.Entry<Integer, Player> entry : players.entrySet()) {
+                playerRecords.put(entry.getKey(), record);
+                writeVarInt(entry.getKey(), out);
+                writeQuantizedPlayer(entry.getValue(), out);
+                record += 1;
+                offsets[record] = out.size();
+            }
+            for (Map.Entry<Integer, Point> entry : bullets.entrySet()) {
+                bulletRecords.put(entry.getKey(), record);
+                writeVarInt(entry.getKey(), out);
+                writeQuantizedPoint(entry.getValue(), out);
+                record += 1;
+                offsets[record] = out.size();
+            }
+            out.flush();
+            bytes = buffer.toByteArray();
+        }
+
+        // Records of the changed entities of a delta sent on its own
+        private static SnapshotRecords of(SnapshotDelta delta) throws IOException {
+            return new SnapshotRecords(delta.getChangedPlayers(), delta.getChangedBullets());
+        }
+
+        private void writePlayer(int id, DataOutputStream out) throws IOException {
+            write(playerRecords, id, out);
+        }
+
+        private void writeBullet(int id, DataOutputStream out) throws IOException {
+            write(bulletRecords, id, out);
+        }
+
+        private void write(IntIntMap records, int id, DataOutputStream out) throws IOException {
+            int record = records.get(id, -1);
+            if (record == -1) {
+                throw new IllegalArgumentException("entity " + id + " is not in the records");
+            }
+            out.write(bytes, offsets[record], offsets[record + 1] - offsets[record]);
+        }
+    }
+
+    // Snapshot deltas: quantized values written as variable length integers
+
+    private static final int DRY_FIRE_FLAG = 1;
+    private static final int RELOAD_FLAG = 1 << 1;
+    private static final int SHOT_FLAG = 1 << 2;
+
+    private static void writeSnapshotDelta(SnapshotDelta delta, SnapshotRecords records, DataOutputStream out)
+            throws IOException {
+        out.writeLong(delta.getTick());
+        // zero means there is no baseline
+        writeVarInt(delta.hasBaseline() ? (int) (delta.getTick() - delta.getBaselineTick()) : 0, out);
+
+        writeVarInt(delta.getChangedPlayers().size(), out);
+        for (int id : delta.getChangedPlayers().keySet()) {
+            records.writePlayer(id, out);
+        }
+        writeVarInt(delta.getRemovedPlayers().size(), out);
+        for (int id : delta.getRemovedPlayers()) {
+            writeVarInt(id, out);
+        }
+        writeVarInt(delta.getChangedBullets().size(), out);
+        for (int id : delta.getChangedBullets().keySet()) {
+            records.writeBullet(id, out);
+        }
+        writeVarInt(delta.getRemovedBullets().size(), out);
+        for (int id : delta.getRemovedBullets()) {
+            writeVarInt(id, out);
+        }
+
+        int flags = 0;
+        if (delta.wasDryFire()) flags |= DRY_FIRE_FLAG;
+        if (delta.wasReload()) flags |= RELOAD_FLAG;
+        if (delta.wasShot()) flags |= SHOT_FLAG;
+        out.writeByte(flags);
+        out.writeFloat(delta.getBulletRadius());
+        out.writeFloat(delta.getPlayerRadius());
+        out.writeInt(delta.getMapHash());
+    }
+
+    private static SnapshotDelta readSnapshotDelta(DataInputStream in) throws IOException {
+        long tick = in.readLong();
+        int baselineAge = readVarInt(in);
+        long baselineTick = baselineAge == 0 ? SnapshotDelta.NO_BASELINE : tick - baselineAge;
+        SnapshotDelta.Builder builder = new SnapshotDelta.Builder(tick, baselineTick);
+
+        int changedPlayers = readSize(in);
+        for (int i = 0; i < changedPlayers; i++) {
+            int id = readVarInt(in);
+            builder.putPlayer(id, readQuantizedPlayer(in));
+        }
+        int removedPlayers = readSize(in);
+        for (int i = 0; i < removedPlayers; i++) {
+            builder.removePlayer(readVarInt(in));
+        }
+        int changedBullets = readSize(in);
+        for (int i = 0; i < changedBullets; i++) {
+            int id = readVarInt(in);
+            builder.putBullet(id, readQuantizedPoint(in));
+        }
+        int removedBullets = readSize(in);
+        for (int i = 0; i < removedBullets; i++) {
+            builder.removeBullet(readVarInt(in));
+        }
+
+        int flags = in.readUnsignedByte();
+        builder.setEvents(
+                (flags & DRY_FIRE_FLAG) != 0,
+                (flags & RELOAD_FLAG) != 0,
+                (flags & SHOT_FLAG) != 0
+        );
+        float bulletRadius = in.readFloat();
+        float playerRadius = in.readFloat();
+        builder.setRadii(bulletRadius, playerRadius);
+        builder.setMapHash(in.readInt());
+        return builder.build();
+    }
+
+    private static void writeQuantizedPoint(Point point, DataOutputStream out) throws IOException {
+        writeVarInt(Quantization.toPositionUnits(point.x), out);
+        writeVarInt(Quantization.toPositionUnits(point.y), out);
+    }
+
+    private static Point readQuantizedPoint(DataInputStream in) throws IOException {
+        float x = Quantization.fromPositionUnits(readVarInt(in));
+        float y = Quantization.fromPositionUnits(readVarInt(in));
+        return Point.create(x, y);
+    }
+
+    private static void writeQuantizedPlayer(Player player, DataOutputStream out) throws IOException {
+        writeQuantizedPoint(player.getPosition(), out);
+        Vector2 velocity = player.getVelocity();
+        writeVarInt(Quantization.toPositionUnits(velocity.x), out);
+        writeVarInt(Quantization.toPositionUnits(velocity.y), out);
+        out.writeShort(Quantization.toAngleUnits(player.getAngle()));
+        writeVarInt(player.getHealth(), out);
+    }
+
+    private static Player readQuantizedPlayer(DataInputStream in) throws IOException {
+        Point position = readQuantizedPoint(in);
+        float vx = Quantization.fromPositionUnits(readVarInt(in));
+        float vy = Quantization.fromPositionUnits(readVarInt(in));
+        float angle = Quantization.fromAngleUnits(in.readUnsignedShort());
+        int health = readVarInt(in);
+        return Player.create(position, new Vector2(vx, vy), angle, health);
+    }
+
+    /**
+     * Zigzag encoded base 128 varint: small values of either sign take one or two bytes.
+     */
+    private static void writeVarInt(int value, DataOutputStream out) throws IOException {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7F) != 0) {
+            out.writeByte((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        out.writeByte(zigzag);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int zigzag = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.readUnsignedByte();
+            zigzag |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("malformed varint");
+    }
+
+    private static int readSize(DataInputStream in) throws IOException {
+        int size = readVarInt(in);
+        if (size < 0) {
+            throw new IOException("negative size: " + size);
+        }
+        return size;
+    }
+
+    private static <T> void writeList(List<T> list, BinaryCodec.Writer<T> writer, DataOutputStream out) throws IOException {
+        out.writeInt(list.size());
+        for (T item : list) {
+            writer.write(item, out);
+        }
+    }
+
+    private static <T> List<T> readList(BinaryCodec.Reader<T> reader, DataInputStream in) throws IOException {
+        int size = in.readInt();
+        if (size < 0) {
+            throw new IOException("negative list size: " + size);
+        }
+        List<T> list = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            list.add(reader.read(in));
+        }
+        return list;
+    }
+}
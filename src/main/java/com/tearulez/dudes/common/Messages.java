@@ -1,9 +1,11 @@
 package com.tearulez.dudes.common;
 
 import com.tearulez.dudes.common.snapshot.Point;
-import com.tearulez.dudes.common.snapshot.StateSnapshot;
+import com.tearulez.dudes.common.snapshot.SnapshotDelta;
+import com.tearulez.dudes.common.snapshot.Wall;
 
 import java.io.Serializable;
+import java.util.List;
 
 public class Messages {
 
@@ -14,12 +16,23 @@ public class Messages {
     }
 
     public static class UpdateModel implements Serializable {
-        public StateSnapshot stateSnapshot;
+        // Id of the recipient's player, the delta itself is shared between recipients
+        public int playerId;
+        // Sequence of the recipient's last input frame the snapshot includes, used for prediction
+        public int lastInputSequence;
+        public SnapshotDelta snapshotDelta;
     }
 
     public static class PlayerDeath implements Serializable {
     }
 
+    // Static map geometry, sent once on connect. Snapshots refer to it by hash.
+    public static class MapData implements Serializable {
+        public int hash;
+        public List<Wall> walls;
+        public int ticksPerSecond;
+    }
+
     // From client to server
 
     public static class MovePlayer implements Serializable {
@@ -32,6 +45,8 @@ public class Messages {
 
     public static class ShootAt implements Serializable {
         public float x, y;
+        // Tick of the world the client showed when shooting, zero if not known
+        public long viewTick;
     }
 
     public static class SpawnRequest implements Serializable {
@@ -40,4 +55,19 @@ public class Messages {
 
     public static class Reload implements Serializable {
     }
+
+    // Inputs of one client frame, sent once per render
+    public static class InputFrame implements Serializable {
+        public int sequence;
+        // Null if there was no such input in the frame
+        public MovePlayer move;
+        public RotatePlayer rotation;
+        public ShootAt shot;
+        public boolean reload;
+    }
+
+    // The last snapshot tick the client has reconstructed, used as a baseline for the following deltas
+    public static class SnapshotAck implements Serializable {
+        public long tick;
+    }
 }
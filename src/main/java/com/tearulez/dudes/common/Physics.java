@@ -0,0 +1,101 @@
+package com.tearulez.dudes.common;
+
+import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.physics.box2d.*;
+import com.tearulez.dudes.common.Messages;
+import com.tearulez.dudes.common.snapshot.Point;
+import com.tearulez.dudes.common.snapshot.Wall;
+
+import java.util.List;
+
+/**
+ * Box2D world setup and player movement, shared by the game model and the client's prediction of its own player,
+ * so both integrate movement the same way.
+ */
+public class Physics {
+    public static final float PLAYER_CIRCLE_RADIUS = 1;
+    public static final float BULLET_CIRCLE_RADIUS = 0.2f;
+
+    private static final int VELOCITY_ITERATIONS = 8;
+    private static final int POSITION_ITERATIONS = 3;
+
+    private static final float MAX_SPEED = 10f;
+    private static final int FORCE_SCALE = 100;
+    private static final int BREAKING_FORCE = 20;
+
+    private Physics() {
+    }
+
+    public static World createWorld(List<Wall> walls) {
+        World world = new World(new Vector2(0, 0), true);
+        for (Wall wall : walls) {
+            Point position = wall.getPosition();
+            BodyDef bodyDef = new BodyDef();
+            bodyDef.type = BodyDef.BodyType.StaticBody;
+            bodyDef.position.set(position.x, position.y);
+            Body body = world.createBody(bodyDef);
+
+            List<Point> points = wall.getPoints();
+            int size = wall.getPoints().size();
+            float[] vertices = new float[size * 2];
+            for (int i = 0; i < size; i++) {
+                Point point = points.get(i);
+                vertices[i * 2] = point.x;
+                vertices[i * 2 + 1] = point.y;
+            }
+            PolygonShape polygonShape = new PolygonShape();
+            polygonShape.set(vertices);
+
+            FixtureDef fixtureDef = new FixtureDef();
+            fixtureDef.shape = polygonShape;
+            fixtureDef.density = 1f;
+            body.setUserData(wall);
+            body.createFixture(fixtureDef);
+
+            polygonShape.dispose();
+        }
+        return world;
+    }
+
+    public static Body createCircleBody(World world, float circleRadius, Vector2 position) {
+        BodyDef bodyDef = new BodyDef();
+        bodyDef.type = BodyDef.BodyType.DynamicBody;
+        bodyDef.position.set(position);
+        Body body = world.createBody(bodyDef);
+        CircleShape shape = new CircleShape();
+        shape.setRadius(circleRadius);
+        FixtureDef fixtureDef = new FixtureDef();
+        fixtureDef.shape = shape;
+        fixtureDef.density = 1f;
+        body.createFixture(fixtureDef);
+
+        shape.dispose();
+        return body;
+    }
+
+    /**
+     * Applies the force of a move action to a player body, or brakes it if there is no action.
+     */
+    public static void applyMove(Body body, Messages.MovePlayer move) {
+        if (move == null) {
+            Vector2 brakingForce = body.getLinearVelocity().cpy().scl(-BREAKING_FORCE);
+            body.applyForceToCenter(brakingForce, true);
+        } else {
+            Vector2 force = new Vector2(move.dx, move.dy);
+            force.nor().scl(FORCE_SCALE);
+            if (body.getLinearVelocity().len() > MAX_SPEED) {
+                Vector2 heading = body.getLinearVelocity().cpy().nor();
+                float dot = force.dot(heading);
+                if (dot > 0) {
+                    heading.scl(dot);
+                    force.sub(heading);
+                }
+            }
+            body.applyForceToCenter(force, true);
+        }
+    }
+
+    public static void step(World world, float timeStep) {
+        world.step(timeStep, VELOCITY_ITERATIONS, POSITION_ITERATIONS);
+    }
+}
@@ -0,0 +1,31 @@
+package com.tearulez.dudes.common.networking;
+
+import static com.tearulez.dudes.server.Assertions.require;
+
+/**
+ * Limits of a connection's outbound queue.
+ * Once the queued bytes exceed the high watermark the connection is congested until they drop
+ * to the low watermark. While congested, the policy decides what happens to new frames.
+ */
+public class Backpressure {
+    public enum Policy {
+        // A new replaceable frame replaces the queued ones that were not started yet
+        DROP_STALE,
+        // The connection fails with SlowConnectionException
+        DISCONNECT
+    }
+
+    public static final Backpressure DEFAULT = new Backpressure(256 * 1024, 64 * 1024, Policy.DROP_STALE);
+
+    final int highWatermark;
+    final int lowWatermark;
+    final Policy policy;
+
+    public Backpressure(int highWatermark, int lowWatermark, Policy policy) {
+        require(lowWatermark >= 0, "low watermark should be non-negative");
+        require(highWatermark >= lowWatermark, "high watermark should not be less than low watermark");
+        this.highWatermark = highWatermark;
+        this.lowWatermark = lowWatermark;
+        this.policy = policy;
+    }
+}
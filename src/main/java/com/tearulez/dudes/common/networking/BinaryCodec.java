@@ -0,0 +1,88 @@
+package com.tearulez.dudes.common.networking;
+
+import java.io.*;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.tearulez.dudes.server.Assertions.require;
+
+/**
+ * Codec with hand-written readers and writers for registered classes.
+ * A registered object is written as a one-byte type tag followed by its fields.
+ * Objects of other classes are written with java serialization under the {@link #SERIALIZED_TAG} tag.
+ */
+public class BinaryCodec implements Codec {
+    private static final int SERIALIZED_TAG = 0;
+    private static final int MAX_TAG = 255;
+
+    private final byte id;
+    private final SerializationCodec serializationCodec = new SerializationCodec();
+    private final Map<Class<?>, Entry<?>> entriesByClass = new HashMap<>();
+    private final Entry<?>[] entriesByTag = new Entry<?>[MAX_TAG + 1];
+
+    public interface Writer<T> {
+        void write(T obj, DataOutputStream out) throws IOException;
+    }
+
+    public interface Reader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private static class Entry<T> {
+        final int tag;
+        final Writer<T> writer;
+        final Reader<T> reader;
+
+        Entry(int tag, Writer<T> writer, Reader<T> reader) {
+            this.tag = tag;
+            this.writer = writer;
+            this.reader = reader;
+        }
+    }
+
+    public BinaryCodec(byte id) {
+        require(id != SerializationCodec.ID, "binary codec id should differ from the serialization codec id");
+        this.id = id;
+    }
+
+    public <T> BinaryCodec register(int tag, Class<T> cls, Writer<T> writer, Reader<T> reader) {
+        require(tag > SERIALIZED_TAG && tag <= MAX_TAG, "tag should be in range 1.." + MAX_TAG);
+        require(entriesByTag[tag] == null, "tag " + tag + " is already registered");
+        require(!entriesByClass.containsKey(cls), cls.getName() + " is already registered");
+        Entry<T> entry = new Entry<>(tag, writer, reader);
+        entriesByTag[tag] = entry;
+        entriesByClass.put(cls, entry);
+        return this;
+    }
+
+    @Override
+    public byte getId() {
+        return id;
+    }
+
+    @Override
+    public void encode(Object obj, DataOutputStream out) throws IOException {
+        @SuppressWarnings("unchecked")
+        Entry<Object> entry = (Entry<Object>) entriesByClass.get(obj.getClass());
+        if (entry == null) {
+            out.writeByte(SERIALIZED_TAG);
+            serializationCodec.encode(obj, out);
+        } else {
+            out.writeByte(entry.tag);
+            entry.writer.write(obj, out);
+        }
+    }
+
+    @Override
+    public Object decode(DataInputStream in) throws IOException, ClassNotFoundException {
+        int tag = in.readUnsignedByte();
+        if (tag == SERIALIZED_TAG) {
+            return serializationCodec.decode(in);
+        }
+        Entry<?> entry = entriesByTag[tag];
+        if (entry == null) {
+            throw new IOException("unknown type tag: " + tag);
+        }
+        return entry.reader.read(in);
+    }
+}
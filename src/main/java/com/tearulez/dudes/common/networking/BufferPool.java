@@ -0,0 +1,75 @@
+package com.tearulez.dudes.common.networking;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.tearulez.dudes.server.Assertions.require;
+
+/**
+ * Receive and outbound queue buffers shared by connections, in power of two sizes from {@link #MIN_SIZE}
+ * up to the one that fits the largest frame allowed.
+ * A connection holds a buffer only while it has bytes of an incomplete frame or of a frame not written yet,
+ * so the memory it takes follows its traffic rather than the largest frame it could get.
+ */
+public class BufferPool {
+    public static final BufferPool DEFAULT = new BufferPool(1024 * 1024);
+    static final int MIN_SIZE = 4 * 1024;
+    // Free buffers kept for reuse, per size
+    private static final int MAX_POOLED_BYTES = 1024 * 1024;
+
+    private final int maxFrameSize;
+    private final List<ArrayDeque<ByteBuffer>> free;
+
+    public BufferPool(int maxFrameSize) {
+        require(maxFrameSize > 0, "max frame size should be positive");
+        this.maxFrameSize = maxFrameSize;
+        int sizeClasses = sizeClass(Integer.BYTES + maxFrameSize) + 1;
+        free = new ArrayList<>(sizeClasses);
+        for (int i = 0; i < sizeClasses; i++) {
+            free.add(new ArrayDeque<>());
+        }
+    }
+
+    int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * @return whether {@link #acquire} has a buffer of the given capacity
+     */
+    boolean fits(int capacity) {
+        return sizeClass(capacity) < free.size();
+    }
+
+    /**
+     * @return an empty buffer of at least the given capacity
+     */
+    synchronized ByteBuffer acquire(int capacity) {
+        int sizeClass = sizeClass(capacity);
+        require(sizeClass < free.size(), "buffer is larger than the largest frame");
+        ByteBuffer buffer = free.get(sizeClass).poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(MIN_SIZE << sizeClass);
+        }
+        return buffer;
+    }
+
+    synchronized void release(ByteBuffer buffer) {
+        int sizeClass = sizeClass(buffer.capacity());
+        ArrayDeque<ByteBuffer> buffers = free.get(sizeClass);
+        if ((buffers.size() + 1) * buffer.capacity() <= Math.max(MAX_POOLED_BYTES, buffer.capacity())) {
+            buffer.clear();
+            buffers.add(buffer);
+        }
+    }
+
+    private static int sizeClass(int capacity) {
+        int sizeClass = 0;
+        while (MIN_SIZE << sizeClass < capacity) {
+            sizeClass += 1;
+        }
+        return sizeClass;
+    }
+}
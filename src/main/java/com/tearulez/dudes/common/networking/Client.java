@@ -2,21 +2,60 @@ package com.tearulez.dudes.common.networking;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.nio.channels.SocketChannel;
 
 public class Client {
     private final String host;
     private final int port;
+    private final Codec preferredCodec;
+    private final DatagramLink datagramLink;
 
     public Client(String host, int port) {
+        this(host, port, new SerializationCodec());
+    }
+
+    public Client(String host, int port, Codec preferredCodec) {
+        this(host, port, preferredCodec, null);
+    }
+
+    /**
+     * Creates a client that asks the server for a datagram path if the link is not null.
+     */
+    public Client(String host, int port, Codec preferredCodec, DatagramLink datagramLink) {
         this.host = host;
         this.port = port;
+        this.preferredCodec = preferredCodec;
+        this.datagramLink = datagramLink;
     }
 
     public Connection connect() throws IOException {
         SocketChannel socketChannel = SocketChannel.open();
         socketChannel.connect(new InetSocketAddress(host, port));
+        socketChannel.socket().setTcpNoDelay(true);
+        Handshake.Agreement agreement = Handshake.offer(socketChannel, preferredCodec, datagramLink != null);
         socketChannel.configureBlocking(false);
-        return new Connection(socketChannel);
+        DatagramPath datagramPath = null;
+        if (agreement.datagramToken != 0) {
+            DatagramChannel datagramChannel = DatagramChannel.open();
+            datagramChannel.configureBlocking(false);
+            datagramPath = new DatagramPath(
+                    datagramChannel,
+                    datagramLink,
+                    agreement.datagramToken,
+                    new InetSocketAddress(host, port)
+            );
+            // An empty datagram tells the server where to send datagrams
+            datagramPath.send(datagramPath.toDatagram(new ByteBuffer[0]));
+        }
+        return new Connection(
+                socketChannel,
+                agreement.codec,
+                Backpressure.DEFAULT,
+                BufferPool.DEFAULT,
+                null,
+                datagramPath
+        );
     }
 }
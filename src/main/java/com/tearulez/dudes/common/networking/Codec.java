@@ -0,0 +1,17 @@
+package com.tearulez.dudes.common.networking;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Turns messages into frame payloads and back.
+ * Peers agree on a codec by its id during the connection handshake.
+ */
+public interface Codec {
+    byte getId();
+
+    void encode(Object obj, DataOutputStream out) throws IOException;
+
+    Object decode(DataInputStream in) throws IOException, ClassNotFoundException;
+}
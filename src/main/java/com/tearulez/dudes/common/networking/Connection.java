@@ -5,65 +5,323 @@ import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Connection {
     private static final int INT_SIZE = 4;
+    private static final int INITIAL_SEND_BUFFER_SIZE = 16 * 1024;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
     private final SocketChannel channel;
-    private ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+    private final Codec codec;
+    private final BufferPool bufferPool;
+    // Holds the bytes of an incomplete frame, null if there are none
+    private ByteBuffer receiveBuffer = null;
 
-    public Connection(SocketChannel channel) {
+    // Send path, reused for every frame
+    private final ByteBufferOutputStream sendStream = new ByteBufferOutputStream(INITIAL_SEND_BUFFER_SIZE);
+    private final DataOutputStream sendOut = new DataOutputStream(sendStream);
+    private final ByteBuffer[] gatheringBuffers = new ByteBuffer[2];
+
+    // Bytes the channel did not accept yet, guarded by itself
+    private final OutboundQueue outboundQueue;
+    // Owns the socket if set, sends are only queued and the loop writes them
+    private final EventLoop eventLoop;
+    // Set while the connection waits in the event loop's flush requests
+    private final AtomicBoolean flushRequested = new AtomicBoolean(false);
+    // Carries replaceable messages if the peers agreed on datagrams, null otherwise
+    private final DatagramPath datagramPath;
+    // Bytes of all frames sent so far, guarded by the connection
+    private long sentBytes = 0;
+
+    Connection(SocketChannel channel, Codec codec, Backpressure backpressure, BufferPool bufferPool,
+               EventLoop eventLoop, DatagramPath datagramPath) {
         this.channel = channel;
+        this.codec = codec;
+        this.outboundQueue = new OutboundQueue(backpressure, bufferPool);
+        this.bufferPool = bufferPool;
+        this.eventLoop = eventLoop;
+        this.datagramPath = datagramPath;
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    DatagramPath getDatagramPath() {
+        return datagramPath;
     }
 
     public void send(Object obj) throws IOException {
-        byte[] byteArray = serialize(obj);
-        ByteBuffer buf = ByteBuffer.allocate(byteArray.length + INT_SIZE);
-        buf.putInt(byteArray.length);
-        buf.put(byteArray);
-        buf.flip();
-        while (buf.hasRemaining()) {
-            channel.write(buf);
+        send(obj, false);
+    }
+
+    /**
+     * Sends a message without blocking. If the channel cannot take it now, it is queued.
+     * Connections of a serving server always queue and leave the writing to the network thread.
+     * A replaceable message may be dropped from the queue when a newer replaceable one is sent
+     * while the connection is congested, see {@link Backpressure}.
+     * If the connection has a datagram path, replaceable messages that fit in a datagram are sent over it
+     * and may be lost or arrive out of order, in which case the stale ones are dropped by the receiver.
+     * Several threads may send over the same connection.
+     */
+    public synchronized void send(Object obj, boolean replaceable) throws IOException {
+        startFrame();
+        codec.encode(obj, sendOut);
+        gatheringBuffers[0] = finishFrame(0);
+        gatheringBuffers[1] = EMPTY;
+        write(replaceable);
+    }
+
+    /**
+     * Sends a frame made of a header encoded for this connection and an already encoded body.
+     * The body is written as is with a gathering write and its position is restored afterwards,
+     * so the same buffer can be sent over many connections.
+     */
+    public synchronized <T> void sendEncoded(BinaryCodec.Writer<T> headerWriter, T header, ByteBuffer body,
+                                             boolean replaceable)
+            throws IOException {
+        startFrame();
+        headerWriter.write(header, sendOut);
+        int bodyPosition = body.position();
+        gatheringBuffers[0] = finishFrame(body.remaining());
+        gatheringBuffers[1] = body;
+        try {
+            write(replaceable);
+        } finally {
+            body.position(bodyPosition);
         }
     }
 
-    private byte[] serialize(Object obj) throws IOException {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        ObjectOutputStream out = new ObjectOutputStream(buffer);
-        out.writeObject(obj);
-        out.flush();
-        return buffer.toByteArray();
+    public int getQueuedBytes() {
+        synchronized (outboundQueue) {
+            return outboundQueue.getQueuedBytes();
+        }
     }
 
-    private Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
-        return new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+    /**
+     * @return the number of bytes of all frames sent so far, including the ones still queued
+     */
+    public synchronized long getSentBytes() {
+        return sentBytes;
     }
 
-    public List<Object> receive() throws IOException, ClassNotFoundException {
-        int read = channel.read(buffer);
-        if (read == -1) {
-            throw new EOFException();
+    public long getDroppedFrames() {
+        synchronized (outboundQueue) {
+            return outboundQueue.getDroppedFrames();
+        }
+    }
+
+    private void write(boolean replaceable) throws IOException {
+        sentBytes += gatheringBuffers[0].remaining() + gatheringBuffers[1].remaining();
+        try {
+            if (replaceable && datagramPath != null && writeDatagram()) {
+                return;
+            }
+            synchronized (outboundQueue) {
+                if (eventLoop == null && writeNow()) {
+                    return;
+                }
+                boolean started = gatheringBuffers[0].position() > 0;
+                outboundQueue.add(gatheringBuffers, replaceable && !started);
+            }
+            if (eventLoop != null) {
+                eventLoop.requestFlush(this);
+            }
+        } finally {
+            gatheringBuffers[0] = null;
+            gatheringBuffers[1] = null;
+        }
+    }
+
+    /**
+     * Sends the current frame as a datagram if it fits in one.
+     *
+     * @return true if the frame was sent
+     */
+    private boolean writeDatagram() throws IOException {
+        // A datagram is a frame of its own, the size prefix is not needed
+        gatheringBuffers[0].position(INT_SIZE);
+        if (!datagramPath.fits(gatheringBuffers[0].remaining() + gatheringBuffers[1].remaining())) {
+            gatheringBuffers[0].position(0);
+            return false;
+        }
+        ByteBuffer datagram = datagramPath.toDatagram(gatheringBuffers);
+        if (eventLoop == null) {
+            datagramPath.send(datagram);
+        } else {
+            datagramPath.enqueue(datagram);
+            eventLoop.requestFlush(this);
+        }
+        return true;
+    }
+
+    /**
+     * Writes queued bytes and then the current frame while the channel accepts them.
+     *
+     * @return true if the whole frame was written
+     */
+    private boolean writeNow() throws IOException {
+        outboundQueue.writeTo(channel);
+        if (!outboundQueue.isEmpty()) {
+            return false;
+        }
+        while (hasRemaining(gatheringBuffers) && channel.write(gatheringBuffers) > 0) {
+            // keep writing while the channel accepts bytes
+        }
+        return !hasRemaining(gatheringBuffers);
+    }
+
+    /**
+     * Writes queued bytes until the channel would block.
+     *
+     * @return true if the queue is empty
+     */
+    boolean flush() throws IOException {
+        if (datagramPath != null) {
+            datagramPath.sendPending();
         }
-        buffer.flip();
+        synchronized (outboundQueue) {
+            outboundQueue.writeTo(channel);
+            return outboundQueue.isEmpty();
+        }
+    }
+
+    /**
+     * @return true if no flush was requested since the event loop last took the connection
+     */
+    boolean markFlushRequested() {
+        return flushRequested.compareAndSet(false, true);
+    }
+
+    void clearFlushRequest() {
+        flushRequested.set(false);
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers) {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void startFrame() {
+        ByteBuffer buf = sendStream.buffer();
+        buf.clear();
+        buf.position(INT_SIZE);
+    }
+
+    /**
+     * Writes the frame size in front of the encoded bytes and returns the send buffer ready to be written.
+     */
+    private ByteBuffer finishFrame(int bytesToFollow) throws IOException {
+        sendOut.flush();
+        ByteBuffer buf = sendStream.buffer();
+        buf.putInt(0, buf.position() - INT_SIZE + bytesToFollow);
+        buf.flip();
+        return buf;
+    }
+
+    private Object decode(ByteBuffer buffer, int size) throws IOException, ClassNotFoundException {
+        return codec.decode(new DataInputStream(new ByteArrayInputStream(
+                buffer.array(), buffer.arrayOffset() + buffer.position(), size
+        )));
+    }
+
+    /**
+     * Decodes the message of a heap buffer positioned after the datagram header.
+     */
+    Object decodeDatagram(ByteBuffer datagram) throws IOException, ClassNotFoundException {
+        return decode(datagram, datagram.remaining());
+    }
+
+    /**
+     * Reads what the channel has and decodes the complete frames.
+     * The receive buffer starts small and grows up to the pool's max frame size when a larger frame arrives,
+     * a frame above that size fails the connection.
+     */
+    public List<Object> receive() throws IOException, ClassNotFoundException {
         List<Object> objs = new ArrayList<>();
-        while (true) {
-            if (buffer.remaining() < INT_SIZE) {
-                break;
+        if (receiveBuffer == null) {
+            receiveBuffer = bufferPool.acquire(BufferPool.MIN_SIZE);
+        }
+        try {
+            boolean bufferFilled;
+            do {
+                if (channel.read(receiveBuffer) == -1) {
+                    throw new EOFException();
+                }
+                // A full buffer means the channel may have more
+                bufferFilled = !receiveBuffer.hasRemaining();
+                receiveBuffer.flip();
+                int incompleteFrameSize = decodeFrames(objs);
+                receiveBuffer.compact();
+                if (incompleteFrameSize > receiveBuffer.capacity()) {
+                    growReceiveBuffer(incompleteFrameSize);
+                }
+            } while (bufferFilled);
+        } finally {
+            if (receiveBuffer.position() == 0) {
+                bufferPool.release(receiveBuffer);
+                receiveBuffer = null;
             }
-            int size = buffer.getInt();
-            if (buffer.remaining() < size) {
-                buffer.position(buffer.position() - INT_SIZE);
-                break;
+        }
+        // The datagram channel of a served connection is shared and read by the event loop
+        if (datagramPath != null && eventLoop == null) {
+            ByteBuffer datagram;
+            while ((datagram = datagramPath.receive()) != null) {
+                objs.add(decodeDatagram(datagram));
             }
-            byte[] bytes = new byte[size];
-            buffer.get(bytes);
-            objs.add(deserialize(bytes));
         }
-        buffer.compact();
         return objs;
     }
 
+    /**
+     * Decodes complete frames from the receive buffer.
+     *
+     * @return size of the incomplete frame left in the buffer including its size prefix, or 0 if it is unknown yet
+     */
+    private int decodeFrames(List<Object> objs) throws IOException, ClassNotFoundException {
+        while (receiveBuffer.remaining() >= INT_SIZE) {
+            int frameStart = receiveBuffer.position();
+            int size = receiveBuffer.getInt(frameStart);
+            if (size < 0 || size > bufferPool.getMaxFrameSize()) {
+                throw new IOException(
+                        "frame size " + size + " is out of range, max frame size " + bufferPool.getMaxFrameSize()
+                );
+            }
+            if (receiveBuffer.remaining() < INT_SIZE + size) {
+                return INT_SIZE + size;
+            }
+            receiveBuffer.position(frameStart + INT_SIZE);
+            objs.add(decode(receiveBuffer, size));
+            receiveBuffer.position(frameStart + INT_SIZE + size);
+        }
+        return 0;
+    }
+
+    private void growReceiveBuffer(int capacity) {
+        ByteBuffer grown = bufferPool.acquire(capacity);
+        receiveBuffer.flip();
+        grown.put(receiveBuffer);
+        bufferPool.release(receiveBuffer);
+        receiveBuffer = grown;
+    }
+
     public void close() throws IOException {
-        channel.close();
+        if (eventLoop != null) {
+            eventLoop.requestClose(this);
+        } else {
+            channel.close();
+            if (datagramPath != null) {
+                datagramPath.close();
+            }
+        }
     }
 
 }
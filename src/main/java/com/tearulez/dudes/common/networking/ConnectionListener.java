@@ -0,0 +1,15 @@
+package com.tearulez.dudes.common.networking;
+
+import java.util.List;
+
+/**
+ * Receives connection events from the network thread of a serving {@link Server}.
+ * Implementations should hand the events over to their own thread and return quickly.
+ */
+public interface ConnectionListener {
+    void connected(Connection connection);
+
+    void received(Connection connection, List<Object> messages);
+
+    void disconnected(Connection connection);
+}
@@ -0,0 +1,16 @@
+package com.tearulez.dudes.common.networking;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+/**
+ * Puts datagrams of the unreliable path on the wire.
+ * Sending may silently lose a datagram, the same way the network does.
+ */
+public interface DatagramLink {
+    DatagramLink DIRECT = DatagramChannel::send;
+
+    void send(DatagramChannel channel, ByteBuffer datagram, SocketAddress target) throws IOException;
+}
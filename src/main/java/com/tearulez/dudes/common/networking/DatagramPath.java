@@ -0,0 +1,120 @@
+package com.tearulez.dudes.common.networking;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Unreliable side of a connection.
+ * A datagram starts with the token agreed on in the handshake and a sequence number,
+ * followed by the encoded message. The receiver drops datagrams that are not newer
+ * than the newest one it has seen, so a late datagram never overrides a fresh one.
+ * A datagram without a message only tells the server where to send.
+ */
+class DatagramPath {
+    static final int HEADER_SIZE = 12;
+    // Larger frames would be fragmented by IP and lost more often, they go over the stream instead
+    static final int MAX_DATAGRAM_SIZE = 1200;
+
+    private final DatagramChannel channel;
+    private final DatagramLink link;
+    private final long token;
+    // Known on the client from the start, learned by the server from the client's datagrams
+    private volatile SocketAddress remoteAddress;
+    // Datagrams of a served connection, sent by the event loop
+    private final Queue<ByteBuffer> pending = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocate(MAX_DATAGRAM_SIZE);
+    private int nextSequence = 0;
+    private boolean receivedAny = false;
+    private int lastSequence = 0;
+
+    DatagramPath(DatagramChannel channel, DatagramLink link, long token, SocketAddress remoteAddress) {
+        this.channel = channel;
+        this.link = link;
+        this.token = token;
+        this.remoteAddress = remoteAddress;
+    }
+
+    long getToken() {
+        return token;
+    }
+
+    void setRemoteAddress(SocketAddress remoteAddress) {
+        this.remoteAddress = remoteAddress;
+    }
+
+    boolean fits(int messageSize) {
+        return remoteAddress != null && HEADER_SIZE + messageSize <= MAX_DATAGRAM_SIZE;
+    }
+
+    ByteBuffer toDatagram(ByteBuffer[] message) {
+        int size = HEADER_SIZE;
+        for (ByteBuffer buffer : message) {
+            size += buffer.remaining();
+        }
+        ByteBuffer datagram = ByteBuffer.allocate(size);
+        datagram.putLong(token);
+        datagram.putInt(nextSequence);
+        nextSequence += 1;
+        for (ByteBuffer buffer : message) {
+            datagram.put(buffer);
+        }
+        datagram.flip();
+        return datagram;
+    }
+
+    void send(ByteBuffer datagram) throws IOException {
+        link.send(channel, datagram, remoteAddress);
+    }
+
+    void enqueue(ByteBuffer datagram) {
+        pending.add(datagram);
+    }
+
+    void sendPending() throws IOException {
+        ByteBuffer datagram;
+        while ((datagram = pending.poll()) != null) {
+            send(datagram);
+        }
+    }
+
+    /**
+     * @return true if a datagram with the given sequence number is newer than the ones received before
+     */
+    boolean accept(int sequence) {
+        if (receivedAny && sequence - lastSequence <= 0) {
+            return false;
+        }
+        receivedAny = true;
+        lastSequence = sequence;
+        return true;
+    }
+
+    /**
+     * Receives datagrams from a channel owned by this path.
+     *
+     * @return the next new message positioned after the header, or null if there is none
+     */
+    ByteBuffer receive() throws IOException {
+        while (true) {
+            receiveBuffer.clear();
+            if (channel.receive(receiveBuffer) == null) {
+                return null;
+            }
+            receiveBuffer.flip();
+            if (receiveBuffer.remaining() < HEADER_SIZE || receiveBuffer.getLong() != token) {
+                continue;
+            }
+            if (accept(receiveBuffer.getInt()) && receiveBuffer.hasRemaining()) {
+                return receiveBuffer;
+            }
+        }
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,312 @@
+package com.tearulez.dudes.common.networking;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Network thread of a serving {@link Server}. A single selector accepts connections,
+ * performs the codec handshake, reads and decodes incoming frames and datagrams and drains outbound queues,
+ * so idle connections cost nothing and other threads never touch the sockets.
+ * Other threads talk to the loop through request queues, see {@link #requestFlush} and {@link #requestClose}.
+ */
+class EventLoop {
+    private final Selector selector;
+    private final DatagramChannel datagramChannel;
+    private final DatagramLink datagramLink;
+    // Connections with a datagram path by their token, accessed from the loop only
+    private final Map<Long, Connection> datagramConnections = new HashMap<>();
+    private final SecureRandom tokens = new SecureRandom();
+    private final Map<Byte, Codec> supportedCodecs;
+    private final Backpressure backpressure;
+    private final BufferPool bufferPool;
+    private final ConnectionListener listener;
+    // Holds a connection at most once, so it does not grow with the sends, guarded by itself
+    private final ArrayDeque<Connection> flushRequests = new ArrayDeque<>();
+    private final Queue<Connection> closeRequests = new ConcurrentLinkedQueue<>();
+    // Set once the selector is woken up, so a burst of requests costs a single wakeup
+    private final AtomicBoolean wakeupPending = new AtomicBoolean(false);
+    private final ByteBuffer datagramBuffer = ByteBuffer.allocate(DatagramPath.MAX_DATAGRAM_SIZE);
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    EventLoop(ServerSocketChannel serverChannel, DatagramChannel datagramChannel, DatagramLink datagramLink,
+              Map<Byte, Codec> supportedCodecs, Backpressure backpressure, BufferPool bufferPool,
+              ConnectionListener listener) throws IOException {
+        this.datagramChannel = datagramChannel;
+        this.datagramLink = datagramLink;
+        this.supportedCodecs = supportedCodecs;
+        this.backpressure = backpressure;
+        this.bufferPool = bufferPool;
+        this.listener = listener;
+        selector = Selector.open();
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        if (datagramChannel != null) {
+            datagramChannel.configureBlocking(false);
+            datagramChannel.register(selector, SelectionKey.OP_READ);
+        }
+        thread = new Thread(this::run, "network-io");
+        thread.start();
+    }
+
+    /**
+     * Asks the loop to write what the connection queued. A connection already waiting for a flush
+     * is not queued again, so a burst of sends costs a single request.
+     */
+    void requestFlush(Connection connection) {
+        if (connection.markFlushRequested()) {
+            synchronized (flushRequests) {
+                flushRequests.add(connection);
+            }
+            wakeup();
+        }
+    }
+
+    void requestClose(Connection connection) {
+        closeRequests.add(connection);
+        wakeup();
+    }
+
+    /**
+     * Stops the loop and waits until it closes all channels.
+     */
+    void close() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        thread.join();
+    }
+
+    private void wakeup() {
+        if (wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                // Reset before draining, so requests added after the drain wake up the next select
+                wakeupPending.set(false);
+                processCloseRequests();
+                processFlushRequests();
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    processKey(key);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void processKey(SelectionKey key) {
+        try {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                accept((ServerSocketChannel) key.channel());
+                return;
+            }
+            if (key.channel() == datagramChannel) {
+                receiveDatagrams();
+                return;
+            }
+            if (key.isReadable()) {
+                if (key.attachment() instanceof ByteBuffer) {
+                    answerHandshake(key);
+                } else {
+                    read(key);
+                }
+            }
+            if (key.isValid() && key.isWritable()) {
+                Connection connection = (Connection) key.attachment();
+                if (connection.flush()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            disconnect(key);
+        }
+    }
+
+    private void accept(ServerSocketChannel serverChannel) throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.socket().setTcpNoDelay(true);
+            channel.configureBlocking(false);
+            // The handshake offer is read into the attachment until the codec is negotiated
+            channel.register(selector, SelectionKey.OP_READ, ByteBuffer.allocate(Handshake.OFFER_SIZE));
+        } catch (IOException e) {
+            channel.close();
+            e.printStackTrace();
+        }
+    }
+
+    private void answerHandshake(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer offer = (ByteBuffer) key.attachment();
+        if (channel.read(offer) == -1) {
+            throw new EOFException();
+        }
+        if (offer.hasRemaining()) {
+            return;
+        }
+        Codec codec = Handshake.choose(offer.get(0), supportedCodecs);
+        DatagramPath datagramPath = null;
+        if (datagramChannel != null && (offer.get(1) & Handshake.DATAGRAMS) != 0) {
+            datagramPath = new DatagramPath(datagramChannel, datagramLink, newDatagramToken(), null);
+        }
+        ByteBuffer answer = Handshake.answer(codec, datagramPath != null ? datagramPath.getToken() : 0);
+        // The send buffer of a fresh socket is empty, the answer always fits
+        channel.write(answer);
+        if (answer.hasRemaining()) {
+            throw new IOException("failed to answer handshake");
+        }
+        Connection connection = new Connection(channel, codec, backpressure, bufferPool, this, datagramPath);
+        key.attach(connection);
+        if (datagramPath != null) {
+            datagramConnections.put(datagramPath.getToken(), connection);
+        }
+        listener.connected(connection);
+    }
+
+    private long newDatagramToken() {
+        long token;
+        do {
+            token = tokens.nextLong();
+        } while (token == 0 || datagramConnections.containsKey(token));
+        return token;
+    }
+
+    private void receiveDatagrams() {
+        while (true) {
+            datagramBuffer.clear();
+            SocketAddress source;
+            try {
+                source = datagramChannel.receive(datagramBuffer);
+            } catch (IOException e) {
+                // the channel is shared by all connections, an error is not a reason to close it
+                e.printStackTrace();
+                return;
+            }
+            if (source == null) {
+                return;
+            }
+            datagramBuffer.flip();
+            if (datagramBuffer.remaining() < DatagramPath.HEADER_SIZE) {
+                continue;
+            }
+            Connection connection = datagramConnections.get(datagramBuffer.getLong());
+            if (connection == null || !connection.getDatagramPath().accept(datagramBuffer.getInt())) {
+                continue;
+            }
+            connection.getDatagramPath().setRemoteAddress(source);
+            if (!datagramBuffer.hasRemaining()) {
+                continue;
+            }
+            try {
+                listener.received(connection, Collections.singletonList(connection.decodeDatagram(datagramBuffer)));
+            } catch (IOException | ClassNotFoundException e) {
+                // a broken datagram is as good as a lost one
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void read(SelectionKey key) throws IOException, ClassNotFoundException {
+        Connection connection = (Connection) key.attachment();
+        List<Object> messages = connection.receive();
+        if (!messages.isEmpty()) {
+            listener.received(connection, messages);
+        }
+    }
+
+    private void processFlushRequests() {
+        Connection connection;
+        while ((connection = pollFlushRequest()) != null) {
+            // Cleared before the flush, so bytes queued after it request another one
+            connection.clearFlushRequest();
+            SelectionKey key = connection.getChannel().keyFor(selector);
+            if (key == null || !key.isValid()) {
+                continue;
+            }
+            try {
+                if (!connection.flush()) {
+                    key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                }
+            } catch (IOException e) {
+                disconnect(key);
+            }
+        }
+    }
+
+    private Connection pollFlushRequest() {
+        synchronized (flushRequests) {
+            return flushRequests.poll();
+        }
+    }
+
+    private void processCloseRequests() {
+        Connection connection;
+        while ((connection = closeRequests.poll()) != null) {
+            forgetDatagrams(connection);
+            closeChannel(connection.getChannel());
+        }
+    }
+
+    private void disconnect(SelectionKey key) {
+        closeChannel(key.channel());
+        if (key.attachment() instanceof Connection) {
+            Connection connection = (Connection) key.attachment();
+            forgetDatagrams(connection);
+            listener.disconnected(connection);
+        }
+    }
+
+    private void forgetDatagrams(Connection connection) {
+        if (connection.getDatagramPath() != null) {
+            datagramConnections.remove(connection.getDatagramPath().getToken());
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            closeChannel(key.channel());
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void closeChannel(SelectableChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.tearulez.dudes.common.networking;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+
+/**
+ * Codec negotiation performed right after connect.
+ * Clients run it on a blocking channel, a serving server answers it from its event loop.
+ * The client offers a codec id and flags, the server answers with the id both sides will use:
+ * the offered one if it is supported and the serialization codec otherwise.
+ * If the client asks for datagrams and the server has them, the answer carries the datagram token.
+ */
+class Handshake {
+    static final int OFFER_SIZE = 2;
+    static final byte DATAGRAMS = 1;
+
+    static class Agreement {
+        final Codec codec;
+        // Zero if the peers use the stream only
+        final long datagramToken;
+
+        Agreement(Codec codec, long datagramToken) {
+            this.codec = codec;
+            this.datagramToken = datagramToken;
+        }
+    }
+
+    static Agreement offer(SocketChannel channel, Codec preferredCodec, boolean datagrams) throws IOException {
+        ByteBuffer offer = ByteBuffer.allocate(OFFER_SIZE);
+        offer.put(preferredCodec.getId());
+        offer.put(datagrams ? DATAGRAMS : 0);
+        offer.flip();
+        write(channel, offer);
+
+        ByteBuffer answer = read(channel, OFFER_SIZE);
+        byte chosenId = answer.get();
+        Codec codec;
+        if (chosenId == preferredCodec.getId()) {
+            codec = preferredCodec;
+        } else if (chosenId == SerializationCodec.ID) {
+            codec = new SerializationCodec();
+        } else {
+            throw new IOException("server chose unknown codec: " + chosenId);
+        }
+        long datagramToken = 0;
+        if ((answer.get() & DATAGRAMS) != 0) {
+            datagramToken = read(channel, Long.BYTES).getLong();
+        }
+        return new Agreement(codec, datagramToken);
+    }
+
+    static Codec answer(SocketChannel channel, Map<Byte, Codec> supportedCodecs) throws IOException {
+        Codec codec = choose(read(channel, OFFER_SIZE).get(0), supportedCodecs);
+        write(channel, answer(codec, 0));
+        return codec;
+    }
+
+    static Codec choose(byte offeredId, Map<Byte, Codec> supportedCodecs) {
+        Codec codec = supportedCodecs.get(offeredId);
+        if (codec == null) {
+            codec = new SerializationCodec();
+        }
+        return codec;
+    }
+
+    static ByteBuffer answer(Codec codec, long datagramToken) {
+        ByteBuffer answer = ByteBuffer.allocate(OFFER_SIZE + Long.BYTES);
+        answer.put(codec.getId());
+        if (datagramToken != 0) {
+            answer.put(DATAGRAMS);
+            answer.putLong(datagramToken);
+        } else {
+            answer.put((byte) 0);
+        }
+        answer.flip();
+        return answer;
+    }
+
+    private static void write(SocketChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    private static ByteBuffer read(SocketChannel channel, int size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) == -1) {
+                throw new EOFException();
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+}
@@ -0,0 +1,126 @@
+package com.tearulez.dudes.common.networking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Frames that could not be written to a non-blocking channel right away.
+ * The bytes are copied into buffers of the pool, which get back to it once written or dropped,
+ * and the frames themselves are reused, so a queue that drains does not allocate.
+ * Not thread safe, the owning connection synchronizes access.
+ */
+class OutboundQueue {
+    private final Backpressure backpressure;
+    private final BufferPool bufferPool;
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+    // Frames that were written or dropped, ready for reuse
+    private final ArrayDeque<Frame> spareFrames = new ArrayDeque<>();
+    private int queuedBytes = 0;
+    private boolean congested = false;
+    private long droppedFrames = 0;
+
+    private static class Frame {
+        ByteBuffer data;
+        boolean replaceable;
+        // Whether the data came from the pool, frames larger than the pool's buffers do not
+        boolean pooled;
+
+        boolean isStarted() {
+            return data.position() > 0;
+        }
+    }
+
+    OutboundQueue(Backpressure backpressure, BufferPool bufferPool) {
+        this.backpressure = backpressure;
+        this.bufferPool = bufferPool;
+    }
+
+    boolean isEmpty() {
+        return frames.isEmpty();
+    }
+
+    int getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    /**
+     * Queues the remaining bytes of the given buffers as one frame. The bytes are copied.
+     * A frame that was partially written already is never replaceable.
+     */
+    void add(ByteBuffer[] buffers, boolean replaceable) throws SlowConnectionException {
+        int size = 0;
+        for (ByteBuffer buffer : buffers) {
+            size += buffer.remaining();
+        }
+        Frame frame = spareFrames.isEmpty() ? new Frame() : spareFrames.poll();
+        frame.pooled = bufferPool.fits(size);
+        frame.data = frame.pooled ? bufferPool.acquire(size) : ByteBuffer.allocate(size);
+        frame.replaceable = replaceable;
+        for (ByteBuffer buffer : buffers) {
+            frame.data.put(buffer);
+        }
+        frame.data.flip();
+
+        if (congested && replaceable) {
+            dropStaleFrames();
+        }
+        frames.add(frame);
+        queuedBytes += size;
+        if (queuedBytes > backpressure.highWatermark) {
+            congested = true;
+            if (backpressure.policy == Backpressure.Policy.DISCONNECT) {
+                throw new SlowConnectionException("outbound queue overflow: " + queuedBytes + " bytes");
+            }
+        }
+    }
+
+    private void dropStaleFrames() {
+        if (backpressure.policy != Backpressure.Policy.DROP_STALE) {
+            return;
+        }
+        Iterator<Frame> iterator = frames.iterator();
+        while (iterator.hasNext()) {
+            Frame frame = iterator.next();
+            if (frame.replaceable && !frame.isStarted()) {
+                iterator.remove();
+                queuedBytes -= frame.data.remaining();
+                droppedFrames += 1;
+                recycle(frame);
+            }
+        }
+    }
+
+    /**
+     * Writes queued frames until the channel would block.
+     */
+    void writeTo(SocketChannel channel) throws IOException {
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            int written = channel.write(frame.data);
+            queuedBytes -= written;
+            if (frame.data.hasRemaining()) {
+                break;
+            }
+            frames.remove();
+            recycle(frame);
+        }
+        if (queuedBytes <= backpressure.lowWatermark) {
+            congested = false;
+        }
+    }
+
+    private void recycle(Frame frame) {
+        if (frame.pooled) {
+            bufferPool.release(frame.data);
+        }
+        frame.data = null;
+        spareFrames.add(frame);
+    }
+}
@@ -0,0 +1,27 @@
+package com.tearulez.dudes.common.networking;
+
+import java.io.*;
+
+/**
+ * Standard java serialization. Every peer supports it, so it is used as a fallback.
+ */
+public class SerializationCodec implements Codec {
+    public static final byte ID = 0;
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public void encode(Object obj, DataOutputStream out) throws IOException {
+        ObjectOutputStream objectOut = new ObjectOutputStream(out);
+        objectOut.writeObject(obj);
+        objectOut.flush();
+    }
+
+    @Override
+    public Object decode(DataInputStream in) throws IOException, ClassNotFoundException {
+        return new ObjectInputStream(in).readObject();
+    }
+}
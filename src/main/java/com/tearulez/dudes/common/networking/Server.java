@@ -4,12 +4,37 @@ import com.tearulez.dudes.server.Assertions;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.channels.DatagramChannel;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.HashMap;
+import java.util.Map;
 
 public class Server {
 
     private ServerSocketChannel serverSocketChannel;
+    private EventLoop eventLoop;
+    private final Map<Byte, Codec> supportedCodecs = new HashMap<>();
+    private final Backpressure backpressure;
+    private final BufferPool bufferPool;
+
+    public Server(Codec... codecs) {
+        this(Backpressure.DEFAULT, codecs);
+    }
+
+    public Server(Backpressure backpressure, Codec... codecs) {
+        this(backpressure, BufferPool.DEFAULT, codecs);
+    }
+
+    public Server(Backpressure backpressure, BufferPool bufferPool, Codec... codecs) {
+        this.backpressure = backpressure;
+        this.bufferPool = bufferPool;
+        Codec serializationCodec = new SerializationCodec();
+        supportedCodecs.put(serializationCodec.getId(), serializationCodec);
+        for (Codec codec : codecs) {
+            supportedCodecs.put(codec.getId(), codec);
+        }
+    }
 
     public void bind(int port) throws IOException {
         Assertions.require(serverSocketChannel == null, "server should not be running");
@@ -17,14 +42,63 @@ public class Server {
         serverSocketChannel.socket().bind(new InetSocketAddress(port));
     }
 
+    /**
+     * Starts accepting connections on a network thread that also reads from and writes to them.
+     * Connection events are delivered to the listener on that thread.
+     */
+    public void serve(int port, ConnectionListener listener) throws IOException {
+        serve(port, listener, null);
+    }
+
+    /**
+     * Same as {@link #serve(int, ConnectionListener)}, but also accepts datagrams on the same port number,
+     * so clients that ask for it get a datagram path for replaceable messages.
+     */
+    public void serve(int port, ConnectionListener listener, DatagramLink datagramLink) throws IOException {
+        bind(port);
+        DatagramChannel datagramChannel = null;
+        if (datagramLink != null) {
+            datagramChannel = DatagramChannel.open();
+            datagramChannel.bind(new InetSocketAddress(port));
+        }
+        eventLoop = new EventLoop(
+                serverSocketChannel,
+                datagramChannel,
+                datagramLink,
+                supportedCodecs,
+                backpressure,
+                bufferPool,
+                listener
+        );
+    }
+
+    /**
+     * Blocks until a client connects, for servers that are bound but not serving.
+     */
     public Connection accept() throws IOException {
+        Assertions.require(eventLoop == null, "connections are accepted by the event loop");
         SocketChannel channel = serverSocketChannel.accept();
         Assertions.require(channel != null, "channel shouldn't be null");
+        channel.socket().setTcpNoDelay(true);
+        Codec codec;
+        try {
+            codec = Handshake.answer(channel, supportedCodecs);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
         channel.configureBlocking(false);
-        return new Connection(channel);
+        return new Connection(channel, codec, backpressure, bufferPool, null, null);
     }
 
     public void stop() throws IOException {
         serverSocketChannel.socket().close();
+        if (eventLoop != null) {
+            try {
+                eventLoop.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
     }
 }
@@ -0,0 +1,65 @@
+package com.tearulez.dudes.common.networking;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.tearulez.dudes.server.Assertions.require;
+
+/**
+ * Datagram link that loses and delays datagrams, to try the unreliable path on loopback.
+ * Jitter reorders datagrams as well, since each one gets its own delay.
+ */
+public class SimulatedLink implements DatagramLink {
+    private final double lossRate;
+    private final int latencyMillis;
+    private final int jitterMillis;
+    private final Random random;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "simulated-link");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SimulatedLink(double lossRate, int latencyMillis, int jitterMillis, long seed) {
+        require(lossRate >= 0 && lossRate <= 1, "loss rate should be between 0 and 1");
+        require(latencyMillis >= 0 && jitterMillis >= 0, "latency and jitter should be non-negative");
+        this.lossRate = lossRate;
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public synchronized void send(DatagramChannel channel, ByteBuffer datagram, SocketAddress target)
+            throws IOException {
+        if (random.nextDouble() < lossRate) {
+            datagram.position(datagram.limit());
+            return;
+        }
+        int delay = latencyMillis + (jitterMillis > 0 ? random.nextInt(jitterMillis + 1) : 0);
+        if (delay == 0) {
+            channel.send(datagram, target);
+            return;
+        }
+        ByteBuffer copy = ByteBuffer.allocate(datagram.remaining());
+        copy.put(datagram);
+        copy.flip();
+        scheduler.schedule(() -> {
+            try {
+                channel.send(copy, target);
+            } catch (IOException e) {
+                // lost, like any datagram
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
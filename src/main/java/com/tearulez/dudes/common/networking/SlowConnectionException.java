@@ -0,0 +1,12 @@
+package com.tearulez.dudes.common.networking;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a peer does not read fast enough and its outbound queue overflows.
+ */
+public class SlowConnectionException extends IOException {
+    SlowConnectionException(String message) {
+        super(message);
+    }
+}
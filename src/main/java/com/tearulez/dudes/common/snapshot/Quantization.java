@@ -0,0 +1,55 @@
+package com.tearulez.dudes.common.snapshot;
+
+import com.badlogic.gdx.math.Vector2;
+
+/**
+ * Fixed-point representation of snapshot values used on the wire.
+ * Quantizing a value and converting it to units and back gives exactly the same float,
+ * so the server can keep quantized baselines that match what the client reconstructs.
+ */
+public class Quantization {
+    private static final float POSITION_UNITS_PER_METER = 64;
+    private static final int ANGLE_UNITS_PER_TURN = 1 << 16;
+    private static final double TURN = 2 * Math.PI;
+
+    private Quantization() {
+    }
+
+    public static int toPositionUnits(float value) {
+        return Math.round(value * POSITION_UNITS_PER_METER);
+    }
+
+    public static float fromPositionUnits(int units) {
+        return units / POSITION_UNITS_PER_METER;
+    }
+
+    public static int toAngleUnits(float angle) {
+        double turns = angle / TURN;
+        turns -= Math.floor(turns);
+        return (int) Math.round(turns * ANGLE_UNITS_PER_TURN) & (ANGLE_UNITS_PER_TURN - 1);
+    }
+
+    public static float fromAngleUnits(int units) {
+        return (float) (units * TURN / ANGLE_UNITS_PER_TURN);
+    }
+
+    static Point quantize(Point point) {
+        return Point.create(
+                fromPositionUnits(toPositionUnits(point.x)),
+                fromPositionUnits(toPositionUnits(point.y))
+        );
+    }
+
+    static Player quantize(Player player) {
+        Vector2 velocity = player.getVelocity();
+        return Player.create(
+                quantize(player.getPosition()),
+                new Vector2(
+                        fromPositionUnits(toPositionUnits(velocity.x)),
+                        fromPositionUnits(toPositionUnits(velocity.y))
+                ),
+                fromAngleUnits(toAngleUnits(player.getAngle())),
+                player.getHealth()
+        );
+    }
+}
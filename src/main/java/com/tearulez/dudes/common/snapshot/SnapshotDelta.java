@@ -0,0 +1,217 @@
+package com.tearulez.dudes.common.snapshot;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Entities that changed between a baseline world state acknowledged by the client and the current tick,
+ * together with the per-tick events.
+ * A delta without a baseline contains the whole world.
+ * Deltas do not depend on the recipient, so clients sharing a baseline can share one delta.
+ */
+public class SnapshotDelta implements Serializable {
+    public static final long NO_BASELINE = -1;
+
+    private long tick;
+    private long baselineTick;
+    private Map<Integer, Player> changedPlayers;
+    private List<Integer> removedPlayers;
+    private Map<Integer, Point> changedBullets;
+    private List<Integer> removedBullets;
+    private boolean wasDryFire;
+    private boolean wasReload;
+    private boolean wasShot;
+    private float bulletRadius;
+    private float playerRadius;
+    private int mapHash;
+
+    public static class Builder {
+        private final SnapshotDelta delta = new SnapshotDelta();
+
+        public Builder(long tick, long baselineTick) {
+            delta.tick = tick;
+            delta.baselineTick = baselineTick;
+            delta.changedPlayers = new HashMap<>();
+            delta.removedPlayers = new ArrayList<>();
+            delta.changedBullets = new HashMap<>();
+            delta.removedBullets = new ArrayList<>();
+        }
+
+        public Builder putPlayer(int id, Player player) {
+            delta.changedPlayers.put(id, player);
+            return this;
+        }
+
+        public Builder removePlayer(int id) {
+            delta.removedPlayers.add(id);
+            return this;
+        }
+
+        public Builder putBullet(int id, Point bullet) {
+            delta.changedBullets.put(id, bullet);
+            return this;
+        }
+
+        public Builder removeBullet(int id) {
+            delta.removedBullets.add(id);
+            return this;
+        }
+
+        public Builder setEvents(boolean wasDryFire, boolean wasReload, boolean wasShot) {
+            delta.wasDryFire = wasDryFire;
+            delta.wasReload = wasReload;
+            delta.wasShot = wasShot;
+            return this;
+        }
+
+        public Builder setRadii(float bulletRadius, float playerRadius) {
+            delta.bulletRadius = bulletRadius;
+            delta.playerRadius = playerRadius;
+            return this;
+        }
+
+        public Builder setMapHash(int mapHash) {
+            delta.mapHash = mapHash;
+            return this;
+        }
+
+        public SnapshotDelta build() {
+            return delta;
+        }
+    }
+
+    private SnapshotDelta() {
+    }
+
+    /**
+     * Starts a delta of the current state against the baseline, or a full delta if there is no baseline.
+     * Events, radii and map hash are left for the caller to set.
+     */
+    public static Builder diff(Optional<WorldState> baseline, WorldState current) {
+        Builder builder = new Builder(
+                current.getTick(),
+                baseline.map(WorldState::getTick).orElse(NO_BASELINE)
+        );
+        Map<Integer, Player> basePlayers = baseline.map(WorldState::getPlayers).orElse(Collections.emptyMap());
+        Map<Integer, Point> baseBullets = baseline.map(WorldState::getBullets).orElse(Collections.emptyMap());
+
+        current.getPlayers().forEach((id, player) -> {
+            if (!isSamePlayer(basePlayers.get(id), player)) {
+                builder.putPlayer(id, player);
+            }
+        });
+        basePlayers.keySet().stream()
+                .filter(id -> !current.getPlayers().containsKey(id))
+                .forEach(builder::removePlayer);
+
+        current.getBullets().forEach((id, bullet) -> {
+            if (!bullet.equals(baseBullets.get(id))) {
+                builder.putBullet(id, bullet);
+            }
+        });
+        baseBullets.keySet().stream()
+                .filter(id -> !current.getBullets().containsKey(id))
+                .forEach(builder::removeBullet);
+        return builder;
+    }
+
+    private static boolean isSamePlayer(Player base, Player player) {
+        return base != null
+                && base.equals(player)
+                && base.getAngle() == player.getAngle()
+                && base.getVelocity().equals(player.getVelocity());
+    }
+
+    /**
+     * Reconstructs the world state of this delta's tick.
+     * The baseline must be the state of {@link #getBaselineTick()}, or empty for a full delta.
+     */
+    public WorldState apply(Optional<WorldState> baseline) {
+        Map<Integer, Player> players = new HashMap<>(
+                baseline.map(WorldState::getPlayers).orElse(Collections.emptyMap())
+        );
+        Map<Integer, Point> bullets = new HashMap<>(
+                baseline.map(WorldState::getBullets).orElse(Collections.emptyMap())
+        );
+        removedPlayers.forEach(players::remove);
+        players.putAll(changedPlayers);
+        removedBullets.forEach(bullets::remove);
+        bullets.putAll(changedBullets);
+        return new WorldState(tick, players, bullets);
+    }
+
+    /**
+     * Presents a reconstructed world state from the point of view of the given player.
+     */
+    public StateSnapshot toStateSnapshot(WorldState world, int playerId) {
+        List<Player> otherPlayers = new ArrayList<>();
+        world.getPlayers().forEach((id, player) -> {
+            if (id != playerId) {
+                otherPlayers.add(player);
+            }
+        });
+        return StateSnapshot.create(
+                Optional.ofNullable(world.getPlayers().get(playerId)),
+                otherPlayers,
+                mapHash,
+                new ArrayList<>(world.getBullets().values()),
+                wasDryFire,
+                wasReload,
+                wasShot,
+                bulletRadius,
+                playerRadius
+        );
+    }
+
+    public boolean hasBaseline() {
+        return baselineTick != NO_BASELINE;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public long getBaselineTick() {
+        return baselineTick;
+    }
+
+    public Map<Integer, Player> getChangedPlayers() {
+        return changedPlayers;
+    }
+
+    public List<Integer> getRemovedPlayers() {
+        return removedPlayers;
+    }
+
+    public Map<Integer, Point> getChangedBullets() {
+        return changedBullets;
+    }
+
+    public List<Integer> getRemovedBullets() {
+        return removedBullets;
+    }
+
+    public boolean wasDryFire() {
+        return wasDryFire;
+    }
+
+    public boolean wasReload() {
+        return wasReload;
+    }
+
+    public boolean wasShot() {
+        return wasShot;
+    }
+
+    public float getBulletRadius() {
+        return bulletRadius;
+    }
+
+    public float getPlayerRadius() {
+        return playerRadius;
+    }
+
+    public int getMapHash() {
+        return mapHash;
+    }
+}
@@ -0,0 +1,30 @@
+package com.tearulez.dudes.common.snapshot;
+
+import java.util.Optional;
+
+/**
+ * Ring buffer of the most recent world states, indexed by tick.
+ */
+public class SnapshotHistory {
+    public static final int SIZE = 64;
+    private final WorldState[] states = new WorldState[SIZE];
+
+    public void add(WorldState state) {
+        states[index(state.getTick())] = state;
+    }
+
+    public Optional<WorldState> get(long tick) {
+        if (tick < 0) {
+            return Optional.empty();
+        }
+        WorldState state = states[index(tick)];
+        if (state == null || state.getTick() != tick) {
+            return Optional.empty();
+        }
+        return Optional.of(state);
+    }
+
+    private static int index(long tick) {
+        return (int) (tick % SIZE);
+    }
+}
@@ -8,7 +8,7 @@ import java.util.Optional;
 public class StateSnapshot implements Serializable {
     private Player player;
     private List<Player> otherPlayers;
-    private List<Wall> walls;
+    private int mapHash;
     private List<Point> bullets;
     private boolean wasDryFire;
     private boolean wasReload;
@@ -17,12 +17,12 @@ public class StateSnapshot implements Serializable {
     private float playerRadius;
 
     public static class Builder {
-        private List<Wall> walls = Collections.emptyList();
+        private int mapHash = 0;
         private List<Point> bullets = Collections.emptyList();
         private List<Player> otherPlayers = Collections.emptyList();
 
-        public Builder setWalls(List<Wall> walls) {
-            this.walls = walls;
+        public Builder setMapHash(int mapHash) {
+            this.mapHash = mapHash;
             return this;
         }
 
@@ -40,7 +40,7 @@ public class StateSnapshot implements Serializable {
             return create(
                     Optional.empty(),
                     otherPlayers,
-                    walls,
+                    mapHash,
                     bullets,
                     false,
                     false,
@@ -56,7 +56,7 @@ public class StateSnapshot implements Serializable {
 
     public static StateSnapshot create(Optional<Player> player,
                                        List<Player> otherPlayers,
-                                       List<Wall> walls,
+                                       int mapHash,
                                        List<Point> bullets,
                                        boolean wasDryFire,
                                        boolean wasReload,
@@ -66,7 +66,7 @@ public class StateSnapshot implements Serializable {
         StateSnapshot state = new StateSnapshot();
         state.player = player.orElse(null);
         state.otherPlayers = otherPlayers;
-        state.walls = walls;
+        state.mapHash = mapHash;
         state.bullets = bullets;
         state.wasDryFire = wasDryFire;
         state.wasReload = wasReload;
@@ -80,7 +80,7 @@ public class StateSnapshot implements Serializable {
         return create(
                 Optional.empty(),
                 Collections.emptyList(),
-                Collections.emptyList(),
+                0,
                 Collections.emptyList(),
                 false,
                 false,
@@ -94,12 +94,29 @@ public class StateSnapshot implements Serializable {
         return Optional.ofNullable(player);
     }
 
+    /**
+     * @return a copy of the snapshot with the recipient's player replaced
+     */
+    public StateSnapshot withPlayer(Player player) {
+        return create(
+                Optional.of(player),
+                otherPlayers,
+                mapHash,
+                bullets,
+                wasDryFire,
+                wasReload,
+                wasShot,
+                bulletRadius,
+                playerRadius
+        );
+    }
+
     public List<Player> getOtherPlayers() {
         return otherPlayers;
     }
 
-    public List<Wall> getWalls() {
-        return walls;
+    public int getMapHash() {
+        return mapHash;
     }
 
     public List<Point> getBullets() {
@@ -140,7 +157,7 @@ public class StateSnapshot implements Serializable {
         if (playerRadius != that.playerRadius) return false;
         if (player != null ? !player.equals(that.player) : that.player != null) return false;
         if (!otherPlayers.equals(that.otherPlayers)) return false;
-        if (!walls.equals(that.walls)) return false;
+        if (mapHash != that.mapHash) return false;
         return bullets.equals(that.bullets);
     }
 
@@ -148,7 +165,7 @@ public class StateSnapshot implements Serializable {
     public int hashCode() {
         int result = player != null ? player.hashCode() : 0;
         result = 31 * result + otherPlayers.hashCode();
-        result = 31 * result + walls.hashCode();
+        result = 31 * result + mapHash;
         result = 31 * result + bullets.hashCode();
         result = 31 * result + (wasDryFire ? 1 : 0);
         result = 31 * result + (wasReload ? 1 : 0);
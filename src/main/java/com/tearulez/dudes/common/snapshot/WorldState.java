@@ -0,0 +1,60 @@
+package com.tearulez.dudes.common.snapshot;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Quantized state of all entities at a given tick, used as a baseline for snapshot deltas.
+ */
+public class WorldState {
+    private final long tick;
+    private final Map<Integer, Player> players;
+    private final Map<Integer, Point> bullets;
+
+    WorldState(long tick, Map<Integer, Player> players, Map<Integer, Point> bullets) {
+        this.tick = tick;
+        this.players = Collections.unmodifiableMap(players);
+        this.bullets = Collections.unmodifiableMap(bullets);
+    }
+
+    public static WorldState quantize(long tick, Map<Integer, Player> players, Map<Integer, Point> bullets) {
+        Map<Integer, Player> quantizedPlayers = new HashMap<>();
+        players.forEach((id, player) -> quantizedPlayers.put(id, Quantization.quantize(player)));
+        Map<Integer, Point> quantizedBullets = new HashMap<>();
+        bullets.forEach((id, bullet) -> quantizedBullets.put(id, Quantization.quantize(bullet)));
+        return new WorldState(tick, quantizedPlayers, quantizedBullets);
+    }
+
+    /**
+     * Returns the state restricted to the given entities.
+     */
+    public WorldState subset(Set<Integer> playerIds, Set<Integer> bulletIds) {
+        Map<Integer, Player> visiblePlayers = new HashMap<>();
+        players.forEach((id, player) -> {
+            if (playerIds.contains(id)) {
+                visiblePlayers.put(id, player);
+            }
+        });
+        Map<Integer, Point> visibleBullets = new HashMap<>();
+        bullets.forEach((id, bullet) -> {
+            if (bulletIds.contains(id)) {
+                visibleBullets.put(id, bullet);
+            }
+        });
+        return new WorldState(tick, visiblePlayers, visibleBullets);
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public Map<Integer, Player> getPlayers() {
+        return players;
+    }
+
+    public Map<Integer, Point> getBullets() {
+        return bullets;
+    }
+}
@@ -0,0 +1,85 @@
+package com.tearulez.dudes.server;
+
+import com.badlogic.gdx.utils.IntArray;
+import com.tearulez.dudes.common.snapshot.Player;
+import com.tearulez.dudes.common.snapshot.Point;
+import com.tearulez.dudes.common.snapshot.WorldState;
+import com.tearulez.dudes.server.engine.GameModel;
+import com.tearulez.dudes.server.engine.Neighbours;
+import com.tearulez.dudes.server.engine.SpatialGrid;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Filters a tick's world state down to what a player can see:
+ * entities within a radius around the player and, optionally, only players on the line of sight.
+ * Players that are not spawned see the whole world, since they choose a spawn point on the map.
+ * Nearby players and whether they are on the line of sight come from the model's neighbours of the tick.
+ */
+class AreaOfInterest {
+    private static final float GRID_CELL_SIZE = 16;
+    private final GameModel gameModel;
+    private final SpatialGrid bulletGrid = new SpatialGrid(GRID_CELL_SIZE);
+    private final IntArray queryResult = new IntArray();
+    private WorldState world;
+    private float radius;
+    private boolean lineOfSight;
+
+    AreaOfInterest(GameModel gameModel) {
+        this.gameModel = gameModel;
+    }
+
+    /**
+     * Indexes the world state of the current tick. A zero radius disables filtering.
+     */
+    void update(WorldState world, float radius, boolean lineOfSight) {
+        this.world = world;
+        this.radius = radius;
+        this.lineOfSight = lineOfSight;
+        bulletGrid.clear();
+        if (!isEnabled()) {
+            return;
+        }
+        for (Map.Entry<Integer, Point> entry : world.getBullets().entrySet()) {
+            bulletGrid.add(entry.getKey(), entry.getValue().x, entry.getValue().y);
+        }
+    }
+
+    /**
+     * Returns the part of the world visible to the player.
+     * The world state itself is returned if filtering is disabled or the player is not spawned.
+     */
+    WorldState viewOf(int playerId) {
+        Player player = world.getPlayers().get(playerId);
+        if (!isEnabled() || player == null) {
+            return world;
+        }
+        Point position = player.getPosition();
+
+        Set<Integer> visiblePlayers = new HashSet<>();
+        visiblePlayers.add(playerId);
+        Neighbours neighbours = gameModel.getNeighbours();
+        int row = neighbours.rowOf(playerId);
+        if (row != -1) {
+            for (int i = neighbours.start(row); i < neighbours.end(row); i++) {
+                if (neighbours.getDistance(i) < radius && (!lineOfSight || neighbours.isVisible(i))) {
+                    visiblePlayers.add(neighbours.getId(i));
+                }
+            }
+        }
+
+        Set<Integer> visibleBullets = new HashSet<>();
+        queryResult.clear();
+        bulletGrid.query(position.x, position.y, radius, queryResult);
+        for (int i = 0; i < queryResult.size; i++) {
+            visibleBullets.add(queryResult.get(i));
+        }
+        return world.subset(visiblePlayers, visibleBullets);
+    }
+
+    private boolean isEnabled() {
+        return radius > 0;
+    }
+}
@@ -3,23 +3,35 @@ package com.tearulez.dudes.server;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
+import com.tearulez.dudes.common.networking.Backpressure;
 import com.tearulez.dudes.server.engine.GameModelConfig;
 
 import java.io.*;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+/**
+ * Serves a page to view and edit the config.
+ * A saved config is validated as a whole and replaces the current one only if it is valid,
+ * the game takes the new one when its next tick starts.
+ * Settings read when the server starts cannot be changed while it runs, a config changing them is rejected.
+ */
 class ConfigServer {
     private static final String CONFIG_PLACEHOLDER = "DEFAULT_CONFIG";
+    // Settings of the current config, as text
     private final Map<String, String> configData = new ConcurrentHashMap<>();
+    private volatile GameModelConfig gameModelConfig;
 
     void startServing(int port) {
         try (FileReader fileReader = new FileReader(new File("server.properties"))) {
-            getConfigDataFromReader(fileReader);
+            saveConfig(fileReader);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -58,7 +70,17 @@ class ConfigServer {
     private class SubmissionHandler implements HttpHandler {
         @Override
         public void handle(HttpExchange t) throws IOException {
-            getConfigDataFromReader(new StringReader(t.getRequestURI().getQuery().substring("config=".length())));
+            try {
+                saveConfig(new StringReader(t.getRequestURI().getQuery().substring("config=".length())));
+            } catch (IllegalArgumentException e) {
+                byte[] response = ("Config is not saved:\n" + e.getMessage()).getBytes();
+                t.getResponseHeaders().add("Content-Type", "text/plain; charset=utf-8");
+                t.sendResponseHeaders(400, response.length);
+                OutputStream os = t.getResponseBody();
+                os.write(response);
+                os.close();
+                return;
+            }
             t.getResponseHeaders().add("Location", "/");
             t.sendResponseHeaders(303, 0);
         }
@@ -70,15 +92,48 @@ class ConfigServer {
                 .collect(Collectors.joining("\n"));
     }
 
-    private void getConfigDataFromReader(Reader reader) throws IOException {
+    /**
+     * Applies the settings read on top of the current ones.
+     *
+     * @throws IllegalArgumentException if the resulting config is invalid, the current one is kept then
+     */
+    synchronized void saveConfig(Reader reader) throws IOException {
         Properties properties = new Properties();
         properties.load(reader);
+        Map<String, String> newConfigData = new HashMap<>(configData);
         for (String name : properties.stringPropertyNames()) {
-            configData.put(name, properties.getProperty(name));
+            newConfigData.put(name, properties.getProperty(name));
+        }
+        GameModelConfig newConfig = new GameModelConfig(newConfigData);
+        List<String> errors = new ArrayList<>();
+        if (!isSlowClientPolicy(newConfig.getSlowClientPolicy())) {
+            errors.add("slowClientPolicy should be one of the policies");
+        }
+        if (gameModelConfig != null) {
+            for (String key : gameModelConfig.changedStartupSettings(newConfig)) {
+                errors.add(key + " is read when the server starts and cannot be changed while it runs");
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new IllegalArgumentException(String.join("\n", errors));
+        }
+        configData.putAll(newConfigData);
+        gameModelConfig = newConfig;
+    }
+
+    private static boolean isSlowClientPolicy(String name) {
+        for (Backpressure.Policy policy : Backpressure.Policy.values()) {
+            if (policy.name().equals(name)) {
+                return true;
+            }
         }
+        return false;
     }
 
+    /**
+     * @return the current config, it does not change once returned
+     */
     GameModelConfig getGameModelConfig() {
-        return new GameModelConfig(configData);
+        return gameModelConfig;
     }
 }
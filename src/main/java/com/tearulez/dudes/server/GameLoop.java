@@ -0,0 +1,105 @@
+package com.tearulez.dudes.server;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static com.tearulez.dudes.server.Assertions.require;
+
+/**
+ * Runs a tick a fixed number of times per second of real time on a thread of its own.
+ * The start time of every tick is computed from the loop's start, so rounding does not accumulate.
+ * A tick that starts late is followed by the ones that are due at once, up to {@link #MAX_CATCH_UP_TICKS};
+ * if the loop is further behind, the missed ticks are dropped and the schedule starts over from now.
+ * A tick that throws is logged and counted, the loop goes on with the next one.
+ * Durations are published in microseconds.
+ */
+class GameLoop {
+    private static final Logger log = LoggerFactory.getLogger(GameLoop.class);
+    static final int MAX_CATCH_UP_TICKS = 5;
+
+    private final int ticksPerSecond;
+    private final Runnable tick;
+    private final Thread thread;
+    private volatile boolean running = true;
+
+    private final Histogram tickDuration;
+    // Ticks due when the loop wakes up beyond the one it woke up for
+    private final Histogram overruns;
+    // How late a tick starts after its scheduled time
+    private final Histogram lateStart;
+    private final Counter droppedTicks;
+    private final Counter failedTicks;
+
+    GameLoop(String name, int ticksPerSecond, Runnable tick) {
+        require(ticksPerSecond > 0, "tick rate should be positive");
+        this.ticksPerSecond = ticksPerSecond;
+        this.tick = tick;
+        tickDuration = Metrics.metrics.histogram(name(GameLoop.class, name, "tickDuration"));
+        overruns = Metrics.metrics.histogram(name(GameLoop.class, name, "overruns"));
+        lateStart = Metrics.metrics.histogram(name(GameLoop.class, name, "lateStart"));
+        droppedTicks = Metrics.metrics.counter(name(GameLoop.class, name, "droppedTicks"));
+        failedTicks = Metrics.metrics.counter(name(GameLoop.class, name, "failedTicks"));
+        thread = new Thread(this::run, name);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Stops the loop after the current tick and waits for it.
+     */
+    void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+    }
+
+    private void run() {
+        long start = System.nanoTime();
+        // Number of ticks since start, the next one to run
+        long count = 0;
+        while (running) {
+            long now = System.nanoTime();
+            long due = tickTime(start, count);
+            if (now < due) {
+                LockSupport.parkNanos(due - now);
+                continue;
+            }
+            long behind = ticksUntil(start, now) - count;
+            if (behind > MAX_CATCH_UP_TICKS) {
+                log.warn("Game loop {} is {} ticks behind, dropping them", thread.getName(), behind);
+                droppedTicks.inc(behind);
+                start = now;
+                count = 0;
+                due = now;
+                behind = 0;
+            }
+            overruns.update(behind);
+            lateStart.update(TimeUnit.NANOSECONDS.toMicros(now - due));
+            try {
+                tick.run();
+            } catch (RuntimeException e) {
+                log.error("Tick of game loop {} failed", thread.getName(), e);
+                failedTicks.inc();
+            }
+            tickDuration.update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - now));
+            count += 1;
+        }
+    }
+
+    private long tickTime(long start, long count) {
+        return start + count * TimeUnit.SECONDS.toNanos(1) / ticksPerSecond;
+    }
+
+    // Index of the last tick due at the given time
+    private long ticksUntil(long start, long time) {
+        return (time - start) * ticksPerSecond / TimeUnit.SECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,102 @@
+package com.tearulez.dudes.server;
+
+import com.tearulez.dudes.common.Messages;
+import com.tearulez.dudes.common.snapshot.SnapshotDelta;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Inputs of one client, written by the network thread and taken by the room's tick without locks.
+ * Input frames are queued in order and the tick takes one per step, the same way the client predicts them,
+ * so the sequence reported back is the one of the frame that was simulated.
+ * Frames with a shot or a reload come reliably and may arrive after newer frames sent as datagrams;
+ * only their shot and reload are kept, with those of frames dropped from a full queue.
+ */
+class InputMailbox {
+    // Frames waiting for a tick, a client ahead of the server does not get further ahead than that
+    static final int MAX_QUEUED_FRAMES = 8;
+
+    // Accessed from the network thread only
+    private boolean receivedInput = false;
+    private int lastSequence = 0;
+
+    private final Queue<Messages.InputFrame> frames = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedFrames = new AtomicInteger();
+    // One-shot inputs of the frames whose movement is not applied
+    private final AtomicReference<Messages.ShootAt> leftoverShot = new AtomicReference<>();
+    private final AtomicBoolean leftoverReload = new AtomicBoolean();
+    // Written by the network thread only
+    private volatile long lastAckedTick = SnapshotDelta.NO_BASELINE;
+    private final AtomicInteger acks = new AtomicInteger();
+
+    /**
+     * Queues a frame newer than the last accepted one. The movement and rotation of older frames are outdated.
+     */
+    void accept(Messages.InputFrame frame) {
+        if (receivedInput && frame.sequence - lastSequence <= 0) {
+            keepOneShotInputs(frame);
+            return;
+        }
+        receivedInput = true;
+        lastSequence = frame.sequence;
+        frames.add(frame);
+        if (queuedFrames.incrementAndGet() > MAX_QUEUED_FRAMES) {
+            Messages.InputFrame dropped = frames.poll();
+            if (dropped != null) {
+                queuedFrames.decrementAndGet();
+                keepOneShotInputs(dropped);
+            }
+        }
+    }
+
+    void accept(Messages.SnapshotAck ack) {
+        if (ack.tick > lastAckedTick) {
+            lastAckedTick = ack.tick;
+            acks.incrementAndGet();
+        }
+    }
+
+    private void keepOneShotInputs(Messages.InputFrame frame) {
+        if (frame.shot != null) {
+            // A newer shot that was not taken yet wins
+            leftoverShot.compareAndSet(null, frame.shot);
+        }
+        if (frame.reload) {
+            leftoverReload.set(true);
+        }
+    }
+
+    /**
+     * @return the oldest queued frame or null if none is waiting
+     */
+    Messages.InputFrame takeFrame() {
+        Messages.InputFrame frame = frames.poll();
+        if (frame != null) {
+            queuedFrames.decrementAndGet();
+        }
+        return frame;
+    }
+
+    Messages.ShootAt takeLeftoverShot() {
+        return leftoverShot.getAndSet(null);
+    }
+
+    boolean takeLeftoverReload() {
+        return leftoverReload.getAndSet(false);
+    }
+
+    /**
+     * @return the number of acknowledgements of newer snapshots since the last call
+     */
+    int takeAcks() {
+        return acks.getAndSet(0);
+    }
+
+    long lastAckedTick() {
+        return lastAckedTick;
+    }
+}
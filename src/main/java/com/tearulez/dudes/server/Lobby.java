@@ -0,0 +1,126 @@
+package com.tearulez.dudes.server;
+
+import com.tearulez.dudes.common.networking.Connection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import static com.tearulez.dudes.server.Assertions.require;
+
+/**
+ * Rooms of the server and the room every client plays in.
+ * A client joins the least populated room on connect and stays there until it leaves or its room is replaced.
+ */
+class Lobby {
+    private static final Logger log = LoggerFactory.getLogger(Lobby.class);
+
+    interface RoomFactory {
+        /**
+         * @param connectionClosed to be told about the connections the room closes itself
+         */
+        Room create(int id, Consumer<Connection> connectionClosed);
+    }
+
+    private final int maxClientsPerRoom;
+    private final RoomFactory roomFactory;
+    private final List<Room> rooms = new ArrayList<>();
+    private final Map<Room, Integer> clientCounts = new HashMap<>();
+    // Read by the network thread for every message, without taking the lobby's lock
+    private final Map<Connection, Room> connectionRooms = new ConcurrentHashMap<>();
+    private int nextRoomId;
+
+    Lobby(int roomCount, int maxClientsPerRoom, RoomFactory roomFactory) {
+        require(roomCount > 0, "room count should be positive");
+        require(maxClientsPerRoom > 0, "max clients per room should be positive");
+        this.maxClientsPerRoom = maxClientsPerRoom;
+        this.roomFactory = roomFactory;
+        for (int i = 0; i < roomCount; i++) {
+            addRoom();
+        }
+    }
+
+    synchronized List<Room> getRooms() {
+        return new ArrayList<>(rooms);
+    }
+
+    /**
+     * Assigns the connection to the room with the fewest clients.
+     *
+     * @return the room or nothing if all rooms are full
+     */
+    synchronized Optional<Room> join(Connection connection) {
+        Room best = null;
+        for (Room room : rooms) {
+            int count = clientCounts.get(room);
+            if (count < maxClientsPerRoom && (best == null || count < clientCounts.get(best))) {
+                best = room;
+            }
+        }
+        if (best != null) {
+            clientCounts.put(best, clientCounts.get(best) + 1);
+            connectionRooms.put(connection, best);
+        }
+        return Optional.ofNullable(best);
+    }
+
+    Optional<Room> roomOf(Connection connection) {
+        return Optional.ofNullable(connectionRooms.get(connection));
+    }
+
+    /**
+     * Frees the place of the connection in its room, does nothing if it left already.
+     *
+     * @return the room the connection was in
+     */
+    synchronized Optional<Room> leave(Connection connection) {
+        Room room = connectionRooms.remove(connection);
+        if (room != null && clientCounts.containsKey(room)) {
+            clientCounts.put(room, clientCounts.get(room) - 1);
+        }
+        return Optional.ofNullable(room);
+    }
+
+    /**
+     * Drops a room whose state can no longer be trusted: its clients are disconnected, its model is freed
+     * and a new empty room takes its place. The room's tick must not be running.
+     */
+    synchronized void replace(Room failed) {
+        if (!rooms.remove(failed)) {
+            return;
+        }
+        clientCounts.remove(failed);
+        List<Connection> connections = new ArrayList<>();
+        connectionRooms.forEach((connection, room) -> {
+            if (room == failed) {
+                connections.add(connection);
+            }
+        });
+        for (Connection connection : connections) {
+            connectionRooms.remove(connection);
+            try {
+                connection.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        failed.dispose();
+        Room room = addRoom();
+        log.warn("Room {} replaced by room {}, {} clients disconnected", failed.getId(), room.getId(), connections.size());
+    }
+
+    private Room addRoom() {
+        Room room = roomFactory.create(nextRoomId, this::leave);
+        nextRoomId += 1;
+        rooms.add(room);
+        clientCounts.put(room, 0);
+        return room;
+    }
+}
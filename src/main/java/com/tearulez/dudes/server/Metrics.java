@@ -0,0 +1,20 @@
+package com.tearulez.dudes.server;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Slf4jReporter;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+class Metrics {
+    static final MetricRegistry metrics = new MetricRegistry();
+
+    static void startReporter() {
+        Slf4jReporter reporter = Slf4jReporter.forRegistry(metrics)
+                .outputTo(LoggerFactory.getLogger(Metrics.class))
+                .convertRatesTo(TimeUnit.SECONDS)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .build();
+        reporter.start(10, TimeUnit.SECONDS);
+    }
+}
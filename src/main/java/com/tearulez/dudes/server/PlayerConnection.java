@@ -1,27 +1,73 @@
 package com.tearulez.dudes.server;
 
 import com.tearulez.dudes.common.Messages;
+import com.tearulez.dudes.common.snapshot.SnapshotHistory;
 
 import java.util.Optional;
 
+/**
+ * State of a client's player, accessed from the room's tick only.
+ * Inputs arrive through the client's mailbox, one input frame is taken from it per tick.
+ */
 class PlayerConnection {
     final int playerId;
+    private final InputMailbox mailbox;
     private Optional<Messages.MovePlayer> bufferedMoveAction = Optional.empty();
     private final int moveActionMaxTTL;
     private int moveActionTTL = 0;
     private Optional<Messages.RotatePlayer> bufferedRotationAction = Optional.empty();
     private Optional<Messages.ShootAt> bufferedShootAction = Optional.empty();
-    private Optional<Messages.Reload> bufferedReloadAction = Optional.empty();
+    private boolean reload = false;
+    private int lastInputSequence = 0;
+    // World states sent to this player
+    final SnapshotHistory snapshotHistory = new SnapshotHistory();
+    final SendRate sendRate;
+    // Events of the ticks since the last snapshot sent to this player
+    int pendingEvents = 0;
 
-    PlayerConnection(int moveActionMaxTTL, int playerId) {
+    PlayerConnection(int moveActionMaxTTL, int playerId, SendRate sendRate, InputMailbox mailbox) {
         this.playerId = playerId;
+        this.sendRate = sendRate;
+        this.mailbox = mailbox;
         if (moveActionMaxTTL <= 0) {
             throw new IllegalArgumentException("action TTL must be greater than zero");
         }
         this.moveActionMaxTTL = moveActionMaxTTL;
     }
 
-    synchronized Optional<Messages.MovePlayer> moveAction() {
+    /**
+     * Takes the inputs of this tick from the mailbox: the oldest queued frame
+     * and the shots and reloads of frames whose movement is not applied.
+     */
+    void takeInputs() {
+        Messages.InputFrame frame = mailbox.takeFrame();
+        Messages.ShootAt shot = null;
+        reload = mailbox.takeLeftoverReload();
+        bufferedRotationAction = Optional.empty();
+        if (frame != null) {
+            lastInputSequence = frame.sequence;
+            if (frame.move != null) {
+                bufferedMoveAction = Optional.of(frame.move);
+                moveActionTTL = moveActionMaxTTL;
+            } else {
+                // The player stopped, the TTL only covers frames that are lost or late
+                moveActionTTL = 0;
+            }
+            bufferedRotationAction = Optional.ofNullable(frame.rotation);
+            shot = frame.shot;
+            reload |= frame.reload;
+        }
+        if (shot == null) {
+            // Otherwise left for the next tick
+            shot = mailbox.takeLeftoverShot();
+        }
+        bufferedShootAction = Optional.ofNullable(shot);
+        for (int acks = mailbox.takeAcks(); acks > 0; acks--) {
+            sendRate.snapshotAcked();
+        }
+    }
+
+    Optional<Messages.MovePlayer> moveAction() {
         if (moveActionTTL > 0) {
             moveActionTTL -= 1;
             return bufferedMoveAction;
@@ -30,38 +76,23 @@ class PlayerConnection {
         }
     }
 
-    synchronized void acceptMoveAction(Messages.MovePlayer moveAction) {
-        bufferedMoveAction = Optional.of(moveAction);
-        moveActionTTL = moveActionMaxTTL;
-    }
-
-    synchronized Optional<Messages.RotatePlayer> rotationAction() {
-        Optional<Messages.RotatePlayer> action = bufferedRotationAction;
-        bufferedRotationAction = Optional.empty();
-        return action;
-    }
-
-    synchronized void acceptRotationAction(Messages.RotatePlayer rotationAction) {
-        bufferedRotationAction = Optional.of(rotationAction);
+    Optional<Messages.RotatePlayer> rotationAction() {
+        return bufferedRotationAction;
     }
 
-    synchronized Optional<Messages.ShootAt> shootAction() {
-        Optional<Messages.ShootAt> action = bufferedShootAction;
-        bufferedShootAction = Optional.empty();
-        return action;
+    Optional<Messages.ShootAt> shootAction() {
+        return bufferedShootAction;
     }
 
-    synchronized void acceptShootAction(Messages.ShootAt shootAction) {
-        bufferedShootAction = Optional.of(shootAction);
+    boolean reloadAction() {
+        return reload;
     }
 
-    synchronized void acceptReloadAction(Messages.Reload reloadAction) {
-        bufferedReloadAction = Optional.of(reloadAction);
+    int lastInputSequence() {
+        return lastInputSequence;
     }
 
-    synchronized Optional<Messages.Reload> reloadAction() {
-        Optional<Messages.Reload> action = bufferedReloadAction;
-        bufferedReloadAction = Optional.empty();
-        return action;
+    long lastAckedTick() {
+        return mailbox.lastAckedTick();
     }
 }
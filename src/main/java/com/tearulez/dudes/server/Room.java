@@ -0,0 +1,465 @@
+package com.tearulez.dudes.server;
+
+import com.codahale.metrics.Histogram;
+import com.tearulez.dudes.common.Messages;
+import com.tearulez.dudes.common.networking.Connection;
+import com.tearulez.dudes.common.networking.SlowConnectionException;
+import com.tearulez.dudes.common.snapshot.Point;
+import com.tearulez.dudes.common.snapshot.Wall;
+import com.tearulez.dudes.common.snapshot.WorldState;
+import com.tearulez.dudes.server.engine.AIEngine;
+import com.tearulez.dudes.server.engine.GameModel;
+import com.tearulez.dudes.server.engine.GameModelConfig;
+import com.tearulez.dudes.server.engine.Rect;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * A match: a game model with its own Box2D world, its bots and the connections of its players.
+ * The state of a room is confined to its tick, which runs on one worker at a time;
+ * the network thread only posts events and inputs to it.
+ * Snapshots are encoded and sent by several workers of the pool in parallel; the tick waits for them,
+ * so everything sent at a tick is done before the next one starts. The bots decide their next actions
+ * on other workers meanwhile, against the world as it was after the step. Stage durations are published in microseconds.
+ */
+class Room {
+    private static final Logger log = LoggerFactory.getLogger(Room.class);
+    private static final Rect SPAWN_AREA = new Rect(-50, 50, -50, 50);
+    private static final int INITIAL_MOVE_ACTION_TTL = 3;
+    // Recipients whose snapshots are sent by one task, fewer would cost more in scheduling than they save
+    private static final int RECIPIENTS_PER_TASK = 4;
+
+    private final int id;
+    private final GameModel gameModel;
+    private final AIEngine aiEngine;
+    private final ForkJoinPool workers;
+    // Told about the connections the room closes itself
+    private final Consumer<Connection> connectionClosed;
+    private final Messages.MapData mapData = new Messages.MapData();
+    private final Supplier<GameModelConfig> configSource;
+    // The config of the current tick, taken from the source when the tick starts
+    private GameModelConfig gameModelConfig;
+    private final AreaOfInterest areaOfInterest;
+    private final Histogram outboundQueueBytes = Metrics.metrics.histogram(name(Room.class, "outboundQueueBytes"));
+    private final Histogram snapshotRate = Metrics.metrics.histogram(name(Room.class, "snapshotRate"));
+    private final Histogram stepDuration = Metrics.metrics.histogram(name(Room.class, "stepDuration"));
+    // Building the world state and the views of the recipients
+    private final Histogram viewDuration = Metrics.metrics.histogram(name(Room.class, "viewDuration"));
+    // Encoding and sending the snapshots, from the start of the fan-out to the end of the last task
+    private final Histogram sendDuration = Metrics.metrics.histogram(name(Room.class, "sendDuration"));
+    private int nextPlayerId;
+    private final Map<Integer, Point> spawnRequests = new HashMap<>();
+    private final List<Integer> playersToRemove = new ArrayList<>();
+    // Connection state is owned by the game loop, the network thread only posts events
+    private final Queue<NetworkEvent> networkEvents = new ConcurrentLinkedQueue<>();
+    // Inputs and acknowledgements skip the event queue, the network thread puts them in the client's mailbox
+    private final Map<Connection, InputMailbox> mailboxes = new ConcurrentHashMap<>();
+    private final Map<Integer, Connection> connections = new HashMap<>();
+    private final Map<Connection, Integer> connectionPlayers = new HashMap<>();
+    private final Map<Integer, PlayerConnection> playerConnections = new HashMap<>();
+
+    private static class NetworkEvent {
+        enum Type {CONNECTED, RECEIVED, DISCONNECTED}
+
+        final Type type;
+        final Connection connection;
+        final List<Object> messages;
+
+        NetworkEvent(Type type, Connection connection, List<Object> messages) {
+            this.type = type;
+            this.connection = connection;
+            this.messages = messages;
+        }
+    }
+
+    private Room(int id, GameModel gameModel, Supplier<GameModelConfig> configSource, AIEngine aiEngine,
+                 ForkJoinPool workers, Consumer<Connection> connectionClosed) {
+        this.id = id;
+        this.gameModel = gameModel;
+        this.configSource = configSource;
+        this.gameModelConfig = configSource.get();
+        this.aiEngine = aiEngine;
+        this.workers = workers;
+        this.connectionClosed = connectionClosed;
+        areaOfInterest = new AreaOfInterest(gameModel);
+        mapData.walls = gameModel.getWalls();
+        mapData.hash = mapData.walls.hashCode();
+        mapData.ticksPerSecond = gameModel.getTicksPerSecond();
+    }
+
+    private int registerNewPlayer() {
+        int playerId = nextPlayerId;
+        nextPlayerId += 1;
+        return playerId;
+    }
+
+    /**
+     * @param configSource the current config, read once per tick
+     * @param workers      pool the snapshots are sent and the bots decide on, a fork-join pool so the room's tick
+     *                     may run on it too
+     */
+    static Room create(int id, List<Wall> walls, Supplier<GameModelConfig> configSource, ForkJoinPool workers,
+                       Consumer<Connection> connectionClosed) {
+        GameModelConfig gameModelConfig = configSource.get();
+        GameModel gameModel = GameModel.create(walls, gameModelConfig);
+        // Seeded with the room's id, so a room's bots do the same given the same inputs
+        AIEngine aiEngine = new AIEngine(
+                gameModelConfig.getBots(), id, SPAWN_AREA, gameModel, gameModelConfig.getBulletSpeed()
+        );
+        return new Room(id, gameModel, configSource, aiEngine, workers, connectionClosed);
+    }
+
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Frees the model of a room that will not tick again.
+     */
+    void dispose() {
+        gameModel.dispose();
+    }
+
+    void connected(Connection connection) {
+        mailboxes.put(connection, new InputMailbox());
+        networkEvents.add(new NetworkEvent(NetworkEvent.Type.CONNECTED, connection, null));
+    }
+
+    void received(Connection connection, List<Object> messages) {
+        InputMailbox mailbox = mailboxes.get(connection);
+        if (mailbox == null) {
+            return;
+        }
+        List<Object> otherMessages = new ArrayList<>();
+        for (Object object : messages) {
+            if (object instanceof Messages.InputFrame) {
+                mailbox.accept((Messages.InputFrame) object);
+            } else if (object instanceof Messages.SnapshotAck) {
+                mailbox.accept((Messages.SnapshotAck) object);
+            } else {
+                otherMessages.add(object);
+            }
+        }
+        if (!otherMessages.isEmpty()) {
+            networkEvents.add(new NetworkEvent(NetworkEvent.Type.RECEIVED, connection, otherMessages));
+        }
+    }
+
+    void disconnected(Connection connection) {
+        mailboxes.remove(connection);
+        networkEvents.add(new NetworkEvent(NetworkEvent.Type.DISCONNECTED, connection, null));
+    }
+
+    private void spawnPlayer(int playerId, Point startingPosition) {
+        spawnRequests.put(playerId, startingPosition);
+    }
+
+    /**
+     * Runs one tick of the match: applies the inputs received since the previous tick,
+     * steps the model and sends the results to the players.
+     */
+    void tick() throws Exception {
+        // A config saved during the tick applies from the next one
+        gameModelConfig = configSource.get();
+        gameModel.setConfig(gameModelConfig);
+        processNetworkEvents();
+        playerConnections().forEach(PlayerConnection::takeInputs);
+        HashMap<Integer, Messages.MovePlayer> moveActions = collectMoveActions();
+        HashMap<Integer, Messages.RotatePlayer> rotationActions = collectRotationActions();
+        HashMap<Integer, Messages.ShootAt> shootActions = collectShootActions();
+        Set<Integer> reloadingPlayers = collectReloadingPlayers();
+
+        spawnRequests.putAll(aiEngine.getSpawnRequests());
+        moveActions.putAll(aiEngine.getMoveActions());
+        rotationActions.putAll(aiEngine.getRotationActions());
+        shootActions.putAll(aiEngine.getShootActions());
+        reloadingPlayers.addAll(aiEngine.getReloadingPlayers());
+
+        cleanupConnections();
+
+        long stepStart = System.nanoTime();
+        gameModel.nextStep(spawnRequests, playersToRemove, moveActions, rotationActions, shootActions, reloadingPlayers);
+        stepDuration.update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - stepStart));
+        ForkJoinTask<?> botDecisions = aiEngine.startNextStep();
+
+        spawnRequests.clear();
+        playersToRemove.clear();
+        log.debug("sending updated model to clients");
+
+        sendStateSnapshots();
+
+        Messages.SpawnResponse spawnResponse = new Messages.SpawnResponse();
+        spawnResponse.success = true;
+        gameModel.getSpawnedPlayers().stream().filter(this::isRealPlayer).forEach(
+                playerId -> sendMessageToClient(playerId, spawnResponse)
+        );
+
+        spawnResponse.success = false;
+        gameModel.getFailedToSpawnPlayers().stream().filter(this::isRealPlayer).forEach(
+                playerId -> sendMessageToClient(playerId, spawnResponse)
+        );
+
+        Messages.PlayerDeath death = new Messages.PlayerDeath();
+        gameModel.getKilledPlayers().stream().filter(this::isRealPlayer).forEach(
+                playerId -> sendMessageToClient(playerId, death)
+        );
+        botDecisions.join();
+    }
+
+    private void cleanupConnections() {
+        for (Integer playerId : playersToRemove) {
+            Connection connection = connections.remove(playerId);
+            if (connection != null) {
+                connectionPlayers.remove(connection);
+                mailboxes.remove(connection);
+                closeConnection(connection);
+            }
+            playerConnections.remove(playerId);
+        }
+    }
+
+    // Frees the connection's place in the lobby even if closing it fails
+    private void closeConnection(Connection connection) {
+        try {
+            connection.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        connectionClosed.accept(connection);
+    }
+
+    private void processNetworkEvents() {
+        NetworkEvent event;
+        while ((event = networkEvents.poll()) != null) {
+            if (event.type == NetworkEvent.Type.CONNECTED) {
+                addConnection(event.connection);
+                continue;
+            }
+            Integer playerId = connectionPlayers.get(event.connection);
+            if (playerId == null) {
+                // the player was removed already
+                continue;
+            }
+            if (event.type == NetworkEvent.Type.RECEIVED) {
+                processClientMessages(playerId, event.messages);
+            } else {
+                removePlayer(playerId);
+            }
+        }
+    }
+
+    private void addConnection(Connection connection) {
+        InputMailbox mailbox = mailboxes.get(connection);
+        if (mailbox == null) {
+            // disconnected already
+            return;
+        }
+        int playerId = registerNewPlayer();
+        try {
+            connection.send(mapData);
+        } catch (IOException e) {
+            mailboxes.remove(connection);
+            e.printStackTrace();
+            closeConnection(connection);
+            return;
+        }
+        SendRate sendRate = new SendRate(gameModel.getTicksPerSecond(), gameModelConfig.getSnapshotsPerSecond());
+        playerConnections.put(playerId, new PlayerConnection(INITIAL_MOVE_ACTION_TTL, playerId, sendRate, mailbox));
+        connections.put(playerId, connection);
+        connectionPlayers.put(connection, playerId);
+    }
+
+    private void processClientMessages(int playerId, List<Object> messages) {
+        PlayerConnection connection = playerConnections.get(playerId);
+        for (Object object : messages) {
+            if (object instanceof Messages.SpawnRequest) {
+                Messages.SpawnRequest action = (Messages.SpawnRequest) object;
+                spawnPlayer(connection.playerId, action.startingPosition);
+            }
+        }
+    }
+
+    private static class SnapshotJob {
+        final int playerId;
+        final Connection connection;
+        final PlayerConnection playerConnection;
+        final WorldState view;
+        final Optional<WorldState> baseline;
+        boolean failed;
+
+        SnapshotJob(int playerId, Connection connection, PlayerConnection playerConnection, WorldState view,
+                    Optional<WorldState> baseline) {
+            this.playerId = playerId;
+            this.connection = connection;
+            this.playerConnection = playerConnection;
+            this.view = view;
+            this.baseline = baseline;
+        }
+    }
+
+    /**
+     * Sends a snapshot to the clients whose send rate is due at this tick.
+     * The world state is only built if there is at least one of them.
+     * Views are filtered on the room's thread, the model is not safe to query from several threads;
+     * the deltas are computed, encoded and sent in parallel.
+     */
+    private void sendStateSnapshots() throws Exception {
+        long tick = gameModel.getCurrentTick();
+        int events = SnapshotFrame.events(gameModel.wasDryFire(), gameModel.wasReloading(), gameModel.wasShot());
+        float maxRate = gameModelConfig.getSnapshotsPerSecond();
+        float minRate = gameModelConfig.getMinSnapshotsPerSecond();
+        long now = System.nanoTime();
+        List<Integer> recipients = new ArrayList<>();
+        connections.forEach((playerId, connection) -> {
+            PlayerConnection playerConnection = playerConnections.get(playerId);
+            playerConnection.pendingEvents |= events;
+            playerConnection.sendRate.update(now, connection.getSentBytes(), connection.getQueuedBytes(), minRate, maxRate);
+            if (playerConnection.sendRate.isDue(tick)) {
+                recipients.add(playerId);
+            }
+        });
+        if (recipients.isEmpty()) {
+            return;
+        }
+
+        WorldState world = WorldState.quantize(
+                tick,
+                gameModel.getPlayers(),
+                gameModel.getBullets()
+        );
+        areaOfInterest.update(world, gameModelConfig.getInterestRadius(), gameModelConfig.getInterestLineOfSight());
+        SnapshotFrame frame = new SnapshotFrame(world, mapData.hash);
+        List<SnapshotJob> jobs = new ArrayList<>(recipients.size());
+        for (Integer playerId : recipients) {
+            PlayerConnection playerConnection = playerConnections.get(playerId);
+            WorldState view = areaOfInterest.viewOf(playerId);
+            Optional<WorldState> baseline = playerConnection.snapshotHistory.get(playerConnection.lastAckedTick());
+            playerConnection.snapshotHistory.add(view);
+            jobs.add(new SnapshotJob(playerId, connections.get(playerId), playerConnection, view, baseline));
+        }
+        long sendStart = System.nanoTime();
+        viewDuration.update(TimeUnit.NANOSECONDS.toMicros(sendStart - now));
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int from = 0; from < jobs.size(); from += RECIPIENTS_PER_TASK) {
+            List<SnapshotJob> batch = jobs.subList(from, Math.min(jobs.size(), from + RECIPIENTS_PER_TASK));
+            tasks.add(() -> {
+                batch.forEach(job -> send(frame, job));
+                return null;
+            });
+        }
+        if (tasks.size() == 1) {
+            tasks.get(0).call();
+        } else {
+            for (Future<Void> result : workers.invokeAll(tasks)) {
+                result.get();
+            }
+        }
+        sendDuration.update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sendStart));
+
+        for (SnapshotJob job : jobs) {
+            if (job.failed) {
+                removePlayer(job.playerId);
+            } else {
+                job.playerConnection.pendingEvents = 0;
+                job.playerConnection.sendRate.snapshotSent(tick);
+            }
+            outboundQueueBytes.update(job.connection.getQueuedBytes());
+            snapshotRate.update(Math.round(job.playerConnection.sendRate.getRate()));
+        }
+    }
+
+    private static void send(SnapshotFrame frame, SnapshotJob job) {
+        try {
+            frame.sendTo(
+                    job.connection,
+                    job.playerId,
+                    job.playerConnection.lastInputSequence(),
+                    job.playerConnection.pendingEvents,
+                    job.view,
+                    job.baseline
+            );
+        } catch (SlowConnectionException e) {
+            log.warn("Disconnecting slow client, playerId: {}, {}", job.playerId, e.getMessage());
+            job.failed = true;
+        } catch (IOException e) {
+            job.failed = true;
+            e.printStackTrace();
+        }
+    }
+
+    private void sendMessageToClient(Integer playerId, Object updateModel) {
+        try {
+            connections.get(playerId).send(updateModel);
+        } catch (IOException e) {
+            removePlayer(playerId);
+            e.printStackTrace();
+        }
+    }
+
+    private void removePlayer(Integer playerId) {
+        playersToRemove.add(playerId);
+    }
+
+    private boolean isRealPlayer(int id) {
+        return playerConnections.containsKey(id);
+    }
+
+    private Collection<PlayerConnection> playerConnections() {
+        return playerConnections.values();
+    }
+
+    private HashMap<Integer, Messages.MovePlayer> collectMoveActions() {
+        HashMap<Integer, Messages.MovePlayer> moveActions = new HashMap<>();
+        for (PlayerConnection connection : playerConnections()) {
+            connection.moveAction().ifPresent(
+                    movePlayer -> moveActions.put(connection.playerId, movePlayer)
+            );
+        }
+        return moveActions;
+    }
+
+    private HashMap<Integer, Messages.RotatePlayer> collectRotationActions() {
+        HashMap<Integer, Messages.RotatePlayer> rotationActions = new HashMap<>();
+        for (PlayerConnection connection : playerConnections()) {
+            connection.rotationAction().ifPresent(
+                    rotatePlayer -> rotationActions.put(connection.playerId, rotatePlayer)
+            );
+        }
+        return rotationActions;
+    }
+
+    private HashMap<Integer, Messages.ShootAt> collectShootActions() {
+        HashMap<Integer, Messages.ShootAt> shootActions = new HashMap<>();
+        for (PlayerConnection connection : playerConnections()) {
+            connection.shootAction().ifPresent(
+                    shootAction -> shootActions.put(connection.playerId, shootAction)
+            );
+        }
+        return shootActions;
+    }
+
+    private Set<Integer> collectReloadingPlayers() {
+        Set<Integer> players = new HashSet<>();
+        for (PlayerConnection connection : playerConnections()) {
+            if (connection.reloadAction()) {
+                players.add(connection.playerId);
+            }
+        }
+        return players;
+    }
+}
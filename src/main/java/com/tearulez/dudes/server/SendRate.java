@@ -0,0 +1,92 @@
+package com.tearulez.dudes.server;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot rate of one client, adapted to what its connection delivers.
+ * Once per second the rate is compared with the measured delivery: if sent bytes pile up in the outbound queue,
+ * or fewer snapshots are acknowledged than were sent, the rate drops below what was delivered,
+ * otherwise it grows back slowly. The rate stays within the configured bounds, which are passed on every update
+ * so a config change applies at once.
+ * Accessed from the game loop only.
+ */
+class SendRate {
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // Share of the delivered rate kept when the connection falls behind, leaving room to catch up
+    private static final float BACKOFF = 0.8f;
+    // Snapshots per second added after a window the connection kept up with
+    private static final float INCREASE = 2;
+    // Share of sent snapshots that should be acknowledged within a window, the rest is treated as lost
+    private static final float MIN_ACKED_SHARE = 0.9f;
+
+    private final int ticksPerSecond;
+    private float rate;
+    private long lastSnapshotTick = Long.MIN_VALUE / 2;
+
+    // Measurement window, started on the first update
+    private long windowStart = -1;
+    private long windowSentBytes;
+    private int windowQueuedBytes;
+    private int windowSnapshots;
+    private int windowAcks;
+
+    SendRate(int ticksPerSecond, float initialRate) {
+        this.ticksPerSecond = ticksPerSecond;
+        this.rate = initialRate;
+    }
+
+    /**
+     * @return true if a snapshot should be sent at the given tick
+     */
+    boolean isDue(long tick) {
+        int interval = Math.max(1, Math.round(ticksPerSecond / rate));
+        return tick - lastSnapshotTick >= interval;
+    }
+
+    void snapshotSent(long tick) {
+        lastSnapshotTick = tick;
+        windowSnapshots += 1;
+    }
+
+    void snapshotAcked() {
+        windowAcks += 1;
+    }
+
+    float getRate() {
+        return rate;
+    }
+
+    /**
+     * @param sentBytes   bytes sent over the connection so far
+     * @param queuedBytes bytes the connection has not written yet
+     */
+    void update(long nowNanos, long sentBytes, int queuedBytes, float minRate, float maxRate) {
+        if (windowStart >= 0) {
+            long elapsed = nowNanos - windowStart;
+            if (elapsed < WINDOW_NANOS) {
+                return;
+            }
+            if (windowSnapshots > 0) {
+                adapt(elapsed / 1e9f, sentBytes - windowSentBytes, queuedBytes);
+            }
+        }
+        rate = Math.max(minRate, Math.min(maxRate, rate));
+        windowStart = nowNanos;
+        windowSentBytes = sentBytes;
+        windowQueuedBytes = queuedBytes;
+        windowSnapshots = 0;
+        windowAcks = 0;
+    }
+
+    private void adapt(float seconds, long bytes, int queuedBytes) {
+        float snapshotSize = (float) bytes / windowSnapshots;
+        if (queuedBytes > snapshotSize) {
+            long deliveredBytes = bytes - (queuedBytes - windowQueuedBytes);
+            rate = BACKOFF * deliveredBytes / snapshotSize / seconds;
+        } else if (windowAcks < windowSnapshots * MIN_ACKED_SHARE) {
+            rate = BACKOFF * windowAcks / seconds;
+        } else {
+            rate += INCREASE;
+        }
+    }
+}
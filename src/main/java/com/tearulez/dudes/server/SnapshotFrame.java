@@ -0,0 +1,108 @@
+package com.tearulez.dudes.server;
+
+import com.tearulez.dudes.common.MessageCodec;
+import com.tearulez.dudes.common.Messages;
+import com.tearulez.dudes.common.Physics;
+import com.tearulez.dudes.common.networking.Connection;
+import com.tearulez.dudes.common.snapshot.SnapshotDelta;
+import com.tearulez.dudes.common.snapshot.WorldState;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The part of a tick's snapshot shared by all recipients.
+ * Recipients get the events of all ticks since their previous snapshot, so these are given per recipient.
+ * Snapshots are sent as replaceable frames: a lagging client gets the newest one, which is still a valid delta
+ * against the tick it acknowledged last.
+ * A delta of the whole world is computed and encoded once per distinct baseline, so clients that
+ * acknowledged the same tick get the same encoded body and only a small per-recipient header is encoded for each.
+ * Deltas of filtered views are specific to their recipient, but every entity of the tick is encoded once
+ * and the bodies of all deltas are assembled from those records.
+ * Recipients may be sent to from several threads at once.
+ */
+class SnapshotFrame {
+    static final int DRY_FIRE_EVENT = 1;
+    static final int RELOAD_EVENT = 1 << 1;
+    static final int SHOT_EVENT = 1 << 2;
+
+    private final WorldState world;
+    private final int mapHash;
+    private final MessageCodec.SnapshotRecords records;
+    private final Map<Long, SnapshotDelta> deltas = new ConcurrentHashMap<>();
+    private final Map<Long, ByteBuffer> encodedDeltas = new ConcurrentHashMap<>();
+
+    SnapshotFrame(WorldState world, int mapHash) throws IOException {
+        this.world = world;
+        this.mapHash = mapHash;
+        records = new MessageCodec.SnapshotRecords(world);
+    }
+
+    static int events(boolean wasDryFire, boolean wasReload, boolean wasShot) {
+        return (wasDryFire ? DRY_FIRE_EVENT : 0) | (wasReload ? RELOAD_EVENT : 0) | (wasShot ? SHOT_EVENT : 0);
+    }
+
+    void sendTo(Connection connection, int playerId, int lastInputSequence, int events, WorldState view,
+                Optional<WorldState> baseline)
+            throws IOException {
+        boolean filtered = view != world;
+        if (connection.getCodec().getId() != MessageCodec.ID) {
+            Messages.UpdateModel updateModel = new Messages.UpdateModel();
+            updateModel.playerId = playerId;
+            updateModel.lastInputSequence = lastInputSequence;
+            updateModel.snapshotDelta = filtered ? createDelta(baseline, view, events) : getDelta(baseline, events);
+            connection.send(updateModel, true);
+            return;
+        }
+        ByteBuffer body;
+        if (filtered) {
+            body = MessageCodec.encodeSnapshotDelta(createDelta(baseline, view, events), records);
+        } else {
+            // Sending moves the position of the body, each sender gets its own
+            body = getEncodedDelta(baseline, events).duplicate();
+        }
+        Messages.UpdateModel header = new Messages.UpdateModel();
+        header.playerId = playerId;
+        header.lastInputSequence = lastInputSequence;
+        connection.sendEncoded(MessageCodec.UPDATE_MODEL_HEADER, header, body, true);
+    }
+
+    // Deltas are shared by recipients with the same baseline and the same events
+    private static long cacheKey(Optional<WorldState> baseline, int events) {
+        long baselineTick = baseline.map(WorldState::getTick).orElse(SnapshotDelta.NO_BASELINE);
+        return baselineTick * 8 + events;
+    }
+
+    private ByteBuffer getEncodedDelta(Optional<WorldState> baseline, int events) throws IOException {
+        long key = cacheKey(baseline, events);
+        ByteBuffer body = encodedDeltas.get(key);
+        if (body == null) {
+            // Senders racing for the same key may both encode it, they use whichever is stored first
+            ByteBuffer encoded = MessageCodec.encodeSnapshotDelta(getDelta(baseline, events), records);
+            body = encodedDeltas.putIfAbsent(key, encoded);
+            if (body == null) {
+                body = encoded;
+            }
+        }
+        return body;
+    }
+
+    private SnapshotDelta getDelta(Optional<WorldState> baseline, int events) {
+        return deltas.computeIfAbsent(cacheKey(baseline, events), key -> createDelta(baseline, world, events));
+    }
+
+    private SnapshotDelta createDelta(Optional<WorldState> baseline, WorldState view, int events) {
+        return SnapshotDelta.diff(baseline, view)
+                .setEvents(
+                        (events & DRY_FIRE_EVENT) != 0,
+                        (events & RELOAD_EVENT) != 0,
+                        (events & SHOT_EVENT) != 0
+                )
+                .setRadii(Physics.BULLET_CIRCLE_RADIUS, Physics.PLAYER_CIRCLE_RADIUS)
+                .setMapHash(mapHash)
+                .build();
+    }
+}
@@ -1,9 +1,9 @@
 package com.tearulez.dudes.server;
 
 import com.badlogic.gdx.math.Vector2;
+import com.tearulez.dudes.common.Physics;
 import com.tearulez.dudes.common.snapshot.Point;
 import com.tearulez.dudes.common.snapshot.Wall;
-import com.tearulez.dudes.server.engine.GameModel;
 import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -103,7 +103,7 @@ public class SvgMap {
     private Point scalePoint(Point point) {
         Point playerCenter = parsePlayerCenter();
         float playerRadius = parsePlayerRadius();
-        float scaleFactor = GameModel.PLAYER_CIRCLE_RADIUS / playerRadius;
+        float scaleFactor = Physics.PLAYER_CIRCLE_RADIUS / playerRadius;
         return Point.create(
                 (point.x - playerCenter.x) * scaleFactor,
                 -(point.y - playerCenter.y) * scaleFactor /*y-axis inversion*/
@@ -2,27 +2,61 @@ package com.tearulez.dudes.server.engine;
 
 import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntIntMap;
 import com.tearulez.dudes.common.Messages;
 import com.tearulez.dudes.common.snapshot.Player;
 import com.tearulez.dudes.common.snapshot.Point;
 
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinTask;
 
+import static com.tearulez.dudes.server.Assertions.require;
+
+/**
+ * Decides what the bots do at the next tick.
+ * The bots have the ids -1 to -n. Decisions are made against a view of the world taken when a step starts,
+ * so they may run while the room goes on with the tick, and with many bots they run in parallel chunks.
+ * Every bot draws from its own random stream, split from the seed in bot order,
+ * so the same seed and the same world give the same decisions however the chunks are scheduled.
+ */
 public class AIEngine {
     private static final int MAX_MOVEMENT = 3;
-    private final float VISION_DISTANCE = 30;
-    private List<Integer> aiPlayerIds;
+    static final float VISION_DISTANCE = 30;
+    // Fewer bots are not worth forking for
+    private static final int PARALLEL_THRESHOLD = 32;
+    private static final int BOTS_PER_CHUNK = 16;
+    // Not an id, bots count down from -1 and clients up from 0
+    private static final int NO_TARGET = Integer.MIN_VALUE;
+
     private final Rect spawnArea;
     private final GameModel gameModel;
-    private Map<Integer, Point> spawnRequests = new HashMap<>();
-    private Map<Integer, Messages.MovePlayer> moveActions = new HashMap<>();
-    private Map<Integer, Messages.RotatePlayer> rotationActions = new HashMap<>();
-    private Map<Integer, Messages.ShootAt> shootActions = new HashMap<>();
-    private Set<Integer> reloadingPlayers = new HashSet<>();
-    private Map<Integer, Movement> movements = new HashMap<>();
-    private Random rnd = new Random();
-    private LeadCalculator leadCalculator;
+    private final LeadCalculator leadCalculator;
+    private final int ticksPerSecond;
+
+    // Bot registry: index of a bot by id and id by index
+    private final IntIntMap botIndices = new IntIntMap();
+    private final int[] botIds;
+    private final SplittableRandom[] randoms;
+    private final Movement[] movements;
+
+    // View of the world the decisions of a step are made against, taken on the room's thread
+    private Map<Integer, Player> players = Collections.emptyMap();
+    private Neighbours neighbours;
+    private final boolean[] magazineEmpty;
+
+    // Decisions of each bot, written by the task of its chunk only
+    private final Point[] spawns;
+    private final Messages.MovePlayer[] moves;
+    private final Messages.RotatePlayer[] rotations;
+    private final Messages.ShootAt[] shots;
+    private final boolean[] reloads;
+
+    private final Map<Integer, Point> spawnRequests = new HashMap<>();
+    private final Map<Integer, Messages.MovePlayer> moveActions = new HashMap<>();
+    private final Map<Integer, Messages.RotatePlayer> rotationActions = new HashMap<>();
+    private final Map<Integer, Messages.ShootAt> shootActions = new HashMap<>();
+    private final Set<Integer> reloadingPlayers = new HashSet<>();
 
     private static class Movement {
         private final Vector2 direction;
@@ -34,118 +68,185 @@ public class AIEngine {
         }
     }
 
-    public AIEngine(List<Integer> aiPlayerIds, Rect spawnArea, GameModel gameModel, float bulletSpeed) {
-        this.aiPlayerIds = aiPlayerIds;
+    /**
+     * @param seed seed of the random streams of the bots
+     */
+    public AIEngine(int botCount, long seed, Rect spawnArea, GameModel gameModel, float bulletSpeed) {
+        require(botCount >= 0, "bot count should not be negative");
         this.spawnArea = spawnArea;
         this.gameModel = gameModel;
+        ticksPerSecond = gameModel.getTicksPerSecond();
         leadCalculator = new LeadCalculator(bulletSpeed);
+        botIds = new int[botCount];
+        randoms = new SplittableRandom[botCount];
+        movements = new Movement[botCount];
+        magazineEmpty = new boolean[botCount];
+        spawns = new Point[botCount];
+        moves = new Messages.MovePlayer[botCount];
+        rotations = new Messages.RotatePlayer[botCount];
+        shots = new Messages.ShootAt[botCount];
+        reloads = new boolean[botCount];
+        SplittableRandom root = new SplittableRandom(seed);
+        for (int i = 0; i < botCount; i++) {
+            botIds[i] = -(i + 1);
+            botIndices.put(botIds[i], i);
+            randoms[i] = root.split();
+        }
     }
 
-    public void computeNextStep() {
-        spawnRequests.clear();
-        moveActions.clear();
-        rotationActions.clear();
-        shootActions.clear();
-        reloadingPlayers.clear();
-        getDeadAIPlayerIds().forEach(
-                id -> spawnRequests.put(id, spawnArea.getRandomPoint())
-        );
-        createMoveActions();
-        createShootReloadRotationActions();
-    }
-
-    private void createShootReloadRotationActions() {
-        Map<Integer, Player> players = gameModel.getPlayers();
-        getAliveAIPlayers().forEach((id, player) -> {
-            Optional<Integer> randomPlayer = getRandomOnSightPlayer(id, players.keySet());
-            randomPlayer.ifPresent(targetId -> {
-                        Point playerPosition = players.get(id).getPosition();
-                        Player target = players.get(targetId);
-                        Vector2 aim = leadCalculator.calculateCollisionPoint(
-                                playerPosition,
-                                target.getPosition(),
-                                target.getVelocity()
-                        );
-                        shootAtOrReload(id, aim);
-
-                        // Add rotation action
-                        Messages.RotatePlayer rotationAction = new Messages.RotatePlayer();
-                        rotationAction.angle = aim.sub(playerPosition.asVector()).angle() * MathUtils.degreesToRadians;
-                        rotationActions.put(id, rotationAction);
-                    }
-            );
-        });
-    }
-
-    private void shootAtOrReload(Integer id, Vector2 targetPoint) {
-        if (gameModel.isMagazineEmpty(id)) {
-            reloadingPlayers.add(id);
+    public int getBotCount() {
+        return botIds.length;
+    }
+
+    public boolean isBot(int playerId) {
+        return botIndices.containsKey(playerId);
+    }
+
+    /**
+     * Takes the view of the world after the model's step and forks the decisions of the bots from the current
+     * fork-join pool. The model may be read and sent from while they run, but not stepped;
+     * the task must be joined before the next step and before the actions are read.
+     */
+    public ForkJoinTask<?> startNextStep() {
+        players = gameModel.getPlayers();
+        neighbours = gameModel.getNeighbours();
+        for (int i = 0; i < botIds.length; i++) {
+            magazineEmpty[i] = players.containsKey(botIds[i]) && gameModel.isMagazineEmpty(botIds[i]);
+        }
+        return ForkJoinTask.adapt(this::computeNextStep).fork();
+    }
+
+    private void computeNextStep() {
+        int botCount = botIds.length;
+        if (botCount < PARALLEL_THRESHOLD) {
+            decide(0, botCount);
         } else {
-            Messages.ShootAt shootAction = new Messages.ShootAt();
-            shootAction.x = targetPoint.x;
-            shootAction.y = targetPoint.y;
-            shootActions.put(id, shootAction);
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int from = 0; from < botCount; from += BOTS_PER_CHUNK) {
+                int chunkFrom = from;
+                int chunkTo = Math.min(botCount, from + BOTS_PER_CHUNK);
+                tasks.add(ForkJoinTask.adapt(() -> decide(chunkFrom, chunkTo)));
+            }
+            ForkJoinTask.invokeAll(tasks);
+        }
+        collectActions();
+    }
+
+    private void decide(int from, int to) {
+        IntArray playersOnSight = new IntArray();
+        for (int i = from; i < to; i++) {
+            spawns[i] = null;
+            moves[i] = null;
+            rotations[i] = null;
+            shots[i] = null;
+            reloads[i] = false;
+            Player player = players.get(botIds[i]);
+            if (player == null) {
+                spawns[i] = spawnArea.getRandomPoint(randoms[i]);
+            } else {
+                createMoveAction(i, player);
+                createShootReloadRotationAction(i, player, playersOnSight);
+            }
         }
     }
 
-    private Optional<Integer> getRandomOnSightPlayer(Integer id, Set<Integer> otherPlayers) {
-        List<Integer> playersOnSight = otherPlayers.stream().filter(
-                otherId -> !otherId.equals(id)
-                        && gameModel.isOnLineOfSight(id, otherId)
-                        && gameModel.getDistanceBetweenPlayers(id, otherId) < VISION_DISTANCE
+    private void createMoveAction(int bot, Player player) {
+        Movement movement = movements[bot];
+        if (movement != null && movement.ticks > 0) {
+            Messages.MovePlayer action = new Messages.MovePlayer();
+            action.dx = movement.direction.x;
+            action.dy = movement.direction.y;
+            movement.ticks -= 1;
+            moves[bot] = action;
+        } else {
+            SplittableRandom rnd = randoms[bot];
+            Point position = player.getPosition();
+            Vector2 direction;
+            if (spawnArea.contains(position)) {
+                direction = new Vector2(
+                        (float) rnd.nextDouble() - 0.5f,
+                        (float) rnd.nextDouble() - 0.5f
+                );
+            } else {
+                Vector2 randomPoint = spawnArea.getRandomPoint(rnd).asVector();
+                direction = randomPoint.sub(position.asVector());
+            }
+            int ticks = rnd.nextInt(ticksPerSecond * MAX_MOVEMENT);
+            movements[bot] = new Movement(direction, ticks);
+        }
+    }
 
-        ).collect(Collectors.toList());
-        if (playersOnSight.isEmpty()) {
-            return Optional.empty();
+    private void createShootReloadRotationAction(int bot, Player player, IntArray playersOnSight) {
+        int targetId = getRandomOnSightPlayer(bot, playersOnSight);
+        if (targetId == NO_TARGET) {
+            return;
+        }
+        Point playerPosition = player.getPosition();
+        Player target = players.get(targetId);
+        Vector2 aim = leadCalculator.calculateCollisionPoint(
+                playerPosition,
+                target.getPosition(),
+                target.getVelocity()
+        );
+        if (magazineEmpty[bot]) {
+            reloads[bot] = true;
         } else {
-            int randomPlayer = playersOnSight.get(rnd.nextInt(playersOnSight.size()));
-            return Optional.of(randomPlayer);
+            Messages.ShootAt shootAction = new Messages.ShootAt();
+            shootAction.x = aim.x;
+            shootAction.y = aim.y;
+            shots[bot] = shootAction;
         }
+
+        Messages.RotatePlayer rotationAction = new Messages.RotatePlayer();
+        rotationAction.angle = aim.sub(playerPosition.asVector()).angle() * MathUtils.degreesToRadians;
+        rotations[bot] = rotationAction;
     }
 
-    private List<Integer> getDeadAIPlayerIds() {
-        Set<Integer> alivePlayers = gameModel.getPlayers().keySet();
-        return aiPlayerIds.stream()
-                .filter(id -> !alivePlayers.contains(id))
-                .collect(Collectors.toList());
+    /**
+     * @return the id of a random player the bot sees or {@link #NO_TARGET} if it sees none
+     */
+    private int getRandomOnSightPlayer(int bot, IntArray playersOnSight) {
+        int row = neighbours.rowOf(botIds[bot]);
+        if (row == -1) {
+            return NO_TARGET;
+        }
+        playersOnSight.clear();
+        for (int i = neighbours.start(row); i < neighbours.end(row); i++) {
+            if (neighbours.isVisible(i) && neighbours.getDistance(i) < VISION_DISTANCE) {
+                playersOnSight.add(neighbours.getId(i));
+            }
+        }
+        if (playersOnSight.size == 0) {
+            return NO_TARGET;
+        }
+        return playersOnSight.get(randoms[bot].nextInt(playersOnSight.size));
     }
 
-    private Map<Integer, Player> getAliveAIPlayers() {
-        Map<Integer, Player> players = gameModel.getPlayers();
-        Map<Integer, Player> aiPlayers = new HashMap<>();
-        players.forEach((id, player) -> {
-            if (aiPlayerIds.contains(id)) {
-                aiPlayers.put(id, player);
+    // Sequential, so the actions are in bot order whatever the order the chunks finished in
+    private void collectActions() {
+        spawnRequests.clear();
+        moveActions.clear();
+        rotationActions.clear();
+        shootActions.clear();
+        reloadingPlayers.clear();
+        for (int i = 0; i < botIds.length; i++) {
+            int id = botIds[i];
+            if (spawns[i] != null) {
+                spawnRequests.put(id, spawns[i]);
             }
-        });
-        return aiPlayers;
-    }
-
-    private void createMoveActions() {
-        getAliveAIPlayers().forEach((id, player) -> {
-            Movement movement = movements.get(id);
-            if (movement != null && movement.ticks > 0) {
-                Messages.MovePlayer action = new Messages.MovePlayer();
-                action.dx = movement.direction.x;
-                action.dy = movement.direction.y;
-                movement.ticks -= 1;
-                moveActions.put(id, action);
-            } else {
-                Point position = player.getPosition();
-                Vector2 direction;
-                if (spawnArea.contains(position)) {
-                    direction = new Vector2(
-                            rnd.nextFloat() - 0.5f,
-                            rnd.nextFloat() - 0.5f
-                    );
-                } else {
-                    Vector2 randomPoint = spawnArea.getRandomPoint().asVector();
-                    direction = randomPoint.sub(position.asVector());
-                }
-                int ticks = rnd.nextInt(GameModel.TICKS_PER_SECOND * MAX_MOVEMENT);
-                movements.put(id, new Movement(direction, ticks));
+            if (moves[i] != null) {
+                moveActions.put(id, moves[i]);
+            }
+            if (rotations[i] != null) {
+                rotationActions.put(id, rotations[i]);
             }
-        });
+            if (shots[i] != null) {
+                shootActions.put(id, shots[i]);
+            }
+            if (reloads[i]) {
+                reloadingPlayers.add(id);
+            }
+        }
     }
 
     public Map<Integer, Point> getSpawnRequests() {
@@ -1,4 +1,34 @@
 package com.tearulez.dudes.server.engine;
 
+import com.badlogic.gdx.math.Vector2;
+
 class Bullet {
+    private final int id;
+    private final int shooterId;
+    // Number of ticks the shooter saw the other players behind, zero if the bullet hits present players
+    private final int rewindTicks;
+    private final Vector2 previousPosition;
+
+    Bullet(int id, int shooterId, int rewindTicks, Vector2 position) {
+        this.id = id;
+        this.shooterId = shooterId;
+        this.rewindTicks = rewindTicks;
+        this.previousPosition = position.cpy();
+    }
+
+    int getId() {
+        return id;
+    }
+
+    int getShooterId() {
+        return shooterId;
+    }
+
+    int getRewindTicks() {
+        return rewindTicks;
+    }
+
+    Vector2 getPreviousPosition() {
+        return previousPosition;
+    }
 }
@@ -3,7 +3,9 @@ package com.tearulez.dudes.server.engine;
 import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.physics.box2d.*;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
 import com.tearulez.dudes.common.Messages;
+import com.tearulez.dudes.common.Physics;
 import com.tearulez.dudes.common.snapshot.Player;
 import com.tearulez.dudes.common.snapshot.Point;
 import com.tearulez.dudes.common.snapshot.Wall;
@@ -12,7 +14,6 @@ import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import static com.tearulez.dudes.server.Assertions.assertState;
 import static com.tearulez.dudes.server.Assertions.require;
@@ -20,31 +21,38 @@ import static com.tearulez.dudes.server.Assertions.require;
 public class GameModel {
     private static final Logger log = LoggerFactory.getLogger(GameModel.class);
 
-    public static final int TICKS_PER_SECOND = 60;
-    public static final float TIME_STEP = 1.0f / TICKS_PER_SECOND;
-    public static final float PLAYER_CIRCLE_RADIUS = 1;
-    public static final float BULLET_CIRCLE_RADIUS = 0.2f;
 
-    private static final int VELOCITY_ITERATIONS = 8;
-    private static final int POSITION_ITERATIONS = 3;
     private static final int MAX_BULLET_COUNT = 100;
 
-    private static final float MAX_SPEED = 10f;
-    private static final int FORCE_SCALE = 100;
-    private static final int BREAKING_FORCE = 20;
-    private static final int MIN_SHOOTING_CYCLE_IN_TICKS = TICKS_PER_SECOND / 12;
-    private static final int RELOAD_TIME_IN_TICKS = TICKS_PER_SECOND * 2;
-
-    private Map<Integer, Body> playerBodies = new HashMap<>();
-    private Map<Integer, Float> playerAngles = new HashMap<>();
-    private Map<Integer, Integer> playerHealths = new HashMap<>();
-    private Map<Integer, Long> previousShootActionTicks = new HashMap<>();
-    private Map<Integer, Long> previousReloadActionTicks = new HashMap<>();
-    private Map<Integer, Integer> magazineAmmoCounts = new HashMap<>();
+    private static final float MIN_SHOOTING_CYCLE_IN_SECONDS = 1.0f / 12;
+    private static final float RELOAD_TIME_IN_SECONDS = 2;
+
+    // Spawn points are checked against the players in the cells within the min spawn distance
+    private static final float PLAYER_GRID_CELL_SIZE = 16;
+
+    // Collision category of players, bullets of lagging shooters do not collide with present players
+    private static final short PLAYER_CATEGORY = 0x0002;
+
+    private final PlayerStore players = new PlayerStore();
+    // Slots of the players by their positions at the end of the last step, and of the players spawned since
+    private final SpatialGrid playerGrid = new SpatialGrid(PLAYER_GRID_CELL_SIZE);
+    private final IntArray nearbyPlayers = new IntArray();
+    // Ids and positions of the players by slot at the end of the last step
+    private int[] slotIds = new int[0];
+    private float[] slotXs = new float[0];
+    private float[] slotYs = new float[0];
+    private final Neighbours neighbours = new Neighbours();
     private Queue<Body> bulletBodies = new ArrayDeque<>();
+    private final PlayerHistory playerHistory;
 
     private final World world;
-    private final GameModelConfig gameModelConfig;
+    private final WallIndex wallIndex;
+    private GameModelConfig gameModelConfig;
+    private final int ticksPerSecond;
+    private final float timeStep;
+    private final int minShootingCycleInTicks;
+    private final int reloadTimeInTicks;
+    private final int maxRewindTicks;
     private List<Wall> walls = new ArrayList<>();
     private List<Integer> killedPlayers = new ArrayList<>();
     private List<PlayerBulletCollision> collisions = new ArrayList<>();
@@ -56,49 +64,51 @@ public class GameModel {
     private boolean wasReloading = false;
 
     private long currentTick = 0;
+    private int nextBulletId = 0;
 
-    private GameModel(World world, GameModelConfig gameModelConfig) {
+    private GameModel(World world, WallIndex wallIndex, GameModelConfig gameModelConfig) {
         this.world = world;
+        this.wallIndex = wallIndex;
         this.gameModelConfig = gameModelConfig;
+        // The tick rate is read once, clients learn it when they connect
+        ticksPerSecond = gameModelConfig.getTicksPerSecond();
+        require(ticksPerSecond > 0, "tick rate should be positive");
+        timeStep = 1.0f / ticksPerSecond;
+        minShootingCycleInTicks = secondsToTicks(MIN_SHOOTING_CYCLE_IN_SECONDS);
+        reloadTimeInTicks = secondsToTicks(RELOAD_TIME_IN_SECONDS);
+        maxRewindTicks = secondsToTicks(gameModelConfig.getMaxRewindMillis() / 1000f);
+        playerHistory = new PlayerHistory(maxRewindTicks + 1);
+    }
+
+    /**
+     * Applies a new config from the next tick on. The tick rate and the rewind window keep their initial values.
+     */
+    public void setConfig(GameModelConfig gameModelConfig) {
+        this.gameModelConfig = gameModelConfig;
+    }
+
+    /**
+     * Frees the native memory of the Box2D world, the model must not be used afterwards.
+     */
+    public void dispose() {
+        world.dispose();
+    }
+
+    private int secondsToTicks(float seconds) {
+        return Math.round(seconds * ticksPerSecond);
     }
 
     public static GameModel create(List<Wall> walls, GameModelConfig gameModelConfig) {
-        World world = new World(new Vector2(0, 0), true);
+        World world = Physics.createWorld(walls);
 
-        GameModel gameModel = new GameModel(world, gameModelConfig);
+        GameModel gameModel = new GameModel(world, WallIndex.create(walls), gameModelConfig);
         world.setContactListener(gameModel.new ListenerClass());
         gameModel.walls = walls;
-        for (Wall wall : walls) {
-            Point position = wall.getPosition();
-            BodyDef bodyDef = new BodyDef();
-            bodyDef.type = BodyDef.BodyType.StaticBody;
-            bodyDef.position.set(position.x, position.y);
-            Body body = world.createBody(bodyDef);
-
-            List<Point> points = wall.getPoints();
-            int size = wall.getPoints().size();
-            float[] vertices = new float[size * 2];
-            for (int i = 0; i < size; i++) {
-                Point point = points.get(i);
-                vertices[i * 2] = point.x;
-                vertices[i * 2 + 1] = point.y;
-            }
-            PolygonShape polygonShape = new PolygonShape();
-            polygonShape.set(vertices);
-
-            FixtureDef fixtureDef = new FixtureDef();
-            fixtureDef.shape = polygonShape;
-            fixtureDef.density = 1f;
-            body.setUserData(wall);
-            body.createFixture(fixtureDef);
-
-            polygonShape.dispose();
-        }
         return gameModel;
     }
 
     private boolean isPlayerPresent(int playerId) {
-        return playerBodies.containsKey(playerId);
+        return players.contains(playerId);
     }
 
     public void nextStep(Map<Integer, Point> spawnRequests,
@@ -115,9 +125,34 @@ public class GameModel {
         processRotationActions(rotationActions);
         processShootActions(shootActions);
         processReloading(reloadingPlayers);
-        world.step(TIME_STEP, VELOCITY_ITERATIONS, POSITION_ITERATIONS);
+        Physics.step(world, timeStep);
+        checkRewoundBullets();
         handlePlayerBulletCollisions();
         currentTick += 1;
+        indexPlayers();
+        // Covers both what the bots see and what clients are sent
+        float neighbourRadius = Math.max(AIEngine.VISION_DISTANCE, gameModelConfig.getInterestRadius());
+        neighbours.update(slotIds, slotXs, slotYs, players.size(), playerGrid, wallIndex, neighbourRadius);
+    }
+
+    // Records the positions the step ended with, in the history, the grid and the slot arrays
+    private void indexPlayers() {
+        int count = players.size();
+        if (slotIds.length < count) {
+            slotIds = new int[count * 2];
+            slotXs = new float[count * 2];
+            slotYs = new float[count * 2];
+        }
+        playerHistory.startTick(currentTick);
+        playerGrid.clear();
+        for (int slot = 0; slot < count; slot++) {
+            Vector2 position = players.getBody(slot).getPosition();
+            slotIds[slot] = players.getId(slot);
+            slotXs[slot] = position.x;
+            slotYs[slot] = position.y;
+            playerHistory.add(players.getId(slot), position.x, position.y);
+            playerGrid.add(slot, position.x, position.y);
+        }
     }
 
     private void checkInvariants() {
@@ -142,7 +177,7 @@ public class GameModel {
         }
 
         assertState(
-                world.getBodyCount() <= playerBodies.size() + walls.size() + MAX_BULLET_COUNT,
+                world.getBodyCount() <= players.size() + walls.size() + MAX_BULLET_COUNT,
                 "world body count is less than players count + walls count + max bullet count"
         );
     }
@@ -155,17 +190,51 @@ public class GameModel {
             double sum = collisions.stream()
                     .mapToDouble(c -> c.squaredRelativeVelocity)
                     .sum();
-            int health = playerHealths.get(playerId) - (int) sum / 10;
+            int slot = players.slotOf(playerId);
+            if (slot == -1) {
+                return;
+            }
+            int health = players.getHealth(slot) - (int) sum / 10;
             if (health < 0) {
                 removePlayer(playerId);
                 killedPlayers.add(playerId);
             } else {
-                playerHealths.put(playerId, health);
+                players.setHealth(slot, health);
             }
         });
         collisions.clear();
     }
 
+    /**
+     * Checks the bullets of lagging shooters against the players where the shooter saw them,
+     * as many ticks ago as the shooter was behind when firing.
+     */
+    private void checkRewoundBullets() {
+        Iterator<Body> bullets = bulletBodies.iterator();
+        while (bullets.hasNext()) {
+            Body body = bullets.next();
+            Bullet bullet = (Bullet) body.getUserData();
+            if (bullet.getRewindTicks() == 0) {
+                continue;
+            }
+            Vector2 position = body.getPosition();
+            int playerId = playerHistory.firstHit(
+                    currentTick + 1 - bullet.getRewindTicks(),
+                    bullet.getShooterId(),
+                    bullet.getPreviousPosition(),
+                    position,
+                    Physics.PLAYER_CIRCLE_RADIUS + Physics.BULLET_CIRCLE_RADIUS
+            );
+            if (playerId != -1 && isPlayerPresent(playerId)) {
+                collisions.add(new PlayerBulletCollision(playerId, body.getLinearVelocity().len2()));
+                world.destroyBody(body);
+                bullets.remove();
+            } else {
+                bullet.getPreviousPosition().set(position);
+            }
+        }
+    }
+
     private void cleanUp() {
         killedPlayers.clear();
         spawnedPlayers.clear();
@@ -185,22 +254,22 @@ public class GameModel {
             Point spawnPoint = request.getValue();
             Vector2 spawnPosition = new Vector2(spawnPoint.x, spawnPoint.y);
             boolean spawnAllowed = true;
-            for (Body body : playerBodies.values()) {
-                Vector2 playerPosition = body.getPosition();
-                if (!isWallOnLine(spawnPosition, playerPosition)
-                        && spawnPosition.cpy().sub(playerPosition).len() < gameModelConfig.getMinSpawnDistance()) {
+            nearbyPlayers.clear();
+            playerGrid.query(spawnPoint.x, spawnPoint.y, gameModelConfig.getMinSpawnDistance(), nearbyPlayers);
+            // Slots are stable until players are removed, which happens after the spawns
+            for (int i = 0; i < nearbyPlayers.size; i++) {
+                if (!isWallOnLine(spawnPosition, players.getBody(nearbyPlayers.get(i)).getPosition())) {
                     spawnAllowed = false;
                     break;
                 }
             }
             if (spawnAllowed) {
                 log.debug("Add new player: {}", playerId);
-                Body body = createCircleBody(PLAYER_CIRCLE_RADIUS, new Vector2(spawnPoint.x, spawnPoint.y));
+                Body body = createCircleBody(Physics.PLAYER_CIRCLE_RADIUS, new Vector2(spawnPoint.x, spawnPoint.y));
                 body.setUserData(PlayerId.create(playerId));
-                playerBodies.put(playerId, body);
-                playerAngles.put(playerId, 0f);
-                playerHealths.put(playerId, Player.MAX_HEALTH);
-                magazineAmmoCounts.put(playerId, gameModelConfig.getMagazineSize());
+                setCollisionFilter(body, PLAYER_CATEGORY, (short) -1);
+                int slot = players.add(playerId, body, Player.MAX_HEALTH, gameModelConfig.getMagazineSize());
+                playerGrid.add(slot, spawnPoint.x, spawnPoint.y);
                 spawnedPlayers.add(playerId);
             } else {
                 failedToSpawnPlayers.add(playerId);
@@ -209,17 +278,7 @@ public class GameModel {
     }
 
     private boolean isWallOnLine(Vector2 from, Vector2 to) {
-        boolean[] wallPresent = new boolean[1];
-        RayCastCallback rayCastCallback = (fixture, point, normal, fraction) -> {
-            float returnValue = -1;
-            if (fixture.getBody().getUserData() instanceof Wall) {
-                wallPresent[0] = true;
-                returnValue = 0;
-            }
-            return returnValue;
-        };
-        world.rayCast(rayCastCallback, from, to);
-        return wallPresent[0];
+        return wallIndex.isBlocked(from.x, from.y, to.x, to.y);
     }
 
     public float getDistanceBetweenPlayers(int playerId1, int playerId2) {
@@ -237,8 +296,30 @@ public class GameModel {
         );
     }
 
+    /**
+     * Safe to call from several threads, unlike the other queries of the model.
+     */
+    public boolean isOnLineOfSight(Point from, Point to) {
+        return !wallIndex.isBlocked(from.x, from.y, to.x, to.y);
+    }
+
+    /**
+     * Checks the line of sight of a batch of segments, packed as four floats each: from x, from y, to x, to y.
+     * Safe to call from several threads for different parts of the batch.
+     *
+     * @param from    index of the first segment to check
+     * @param to      index after the last segment to check
+     * @param visible set for every checked segment to whether no wall crosses it
+     */
+    public void areOnLineOfSight(float[] segments, int from, int to, boolean[] visible) {
+        wallIndex.areBlocked(segments, from, to, visible);
+        for (int i = from; i < to; i++) {
+            visible[i] = !visible[i];
+        }
+    }
+
     private Vector2 getPlayerPosition(int playerId) {
-        return playerBodies.get(playerId).getPosition();
+        return players.getBody(players.slotOf(playerId)).getPosition();
     }
 
     private void assertPlayerPresence(int playerId) {
@@ -247,7 +328,7 @@ public class GameModel {
 
     public boolean isMagazineEmpty(int playerId) {
         assertPlayerPresence(playerId);
-        return magazineAmmoCounts.get(playerId).equals(0);
+        return players.getAmmoCount(players.slotOf(playerId)) == 0;
     }
 
     private void removePlayer(int playerId) {
@@ -256,106 +337,90 @@ public class GameModel {
             return;
         }
         log.debug("Remove player: {}", playerId);
-        Body body = playerBodies.get(playerId);
-        world.destroyBody(body);
-        playerBodies.remove(playerId);
-        playerAngles.remove(playerId);
-        playerHealths.remove(playerId);
-        previousShootActionTicks.remove(playerId);
-        previousReloadActionTicks.remove(playerId);
-        magazineAmmoCounts.remove(playerId);
+        world.destroyBody(players.remove(playerId));
     }
 
     private Body createCircleBody(float circleRadius, Vector2 position) {
-        BodyDef bodyDef = new BodyDef();
-        bodyDef.type = BodyDef.BodyType.DynamicBody;
-        bodyDef.position.set(position);
-        Body body = world.createBody(bodyDef);
-        CircleShape shape = new CircleShape();
-        shape.setRadius(circleRadius);
-        FixtureDef fixtureDef = new FixtureDef();
-        fixtureDef.shape = shape;
-        fixtureDef.density = 1f;
-        body.createFixture(fixtureDef);
+        return Physics.createCircleBody(world, circleRadius, position);
+    }
 
-        shape.dispose();
-        return body;
+    private static void setCollisionFilter(Body body, short category, short mask) {
+        for (Fixture fixture : body.getFixtureList()) {
+            Filter filter = fixture.getFilterData();
+            filter.categoryBits = category;
+            filter.maskBits = mask;
+            fixture.setFilterData(filter);
+        }
     }
 
-    private void processMoveActions(Map<Integer, Messages.MovePlayer> moveActions) {
-        for (Integer playerId : getPlayerIds()) {
-            Messages.MovePlayer move = moveActions.get(playerId);
-            Body body = playerBodies.get(playerId);
-            if (move == null) {
-                Vector2 brakingForce = body.getLinearVelocity().cpy().scl(-BREAKING_FORCE);
-                body.applyForceToCenter(brakingForce, true);
-            } else {
-                Vector2 force = new Vector2(move.dx, move.dy);
-                force.nor().scl(FORCE_SCALE);
-                if (body.getLinearVelocity().len() > MAX_SPEED) {
-                    Vector2 heading = body.getLinearVelocity().cpy().nor();
-                    float dot = force.dot(heading);
-                    if (dot > 0) {
-                        heading.scl(dot);
-                        force.sub(heading);
-                    }
-                }
-                body.applyForceToCenter(force, true);
-            }
+    /**
+     * @return the number of ticks the shooter saw the world behind, within the allowed rewind window
+     */
+    private int rewindTicks(Messages.ShootAt shootAt) {
+        if (shootAt.viewTick <= 0 || shootAt.viewTick >= currentTick) {
+            return 0;
         }
+        return (int) Math.min(currentTick - shootAt.viewTick, maxRewindTicks);
     }
 
-    private Iterable<Integer> getPlayerIds() {
-        return playerBodies.keySet();
+    private void processMoveActions(Map<Integer, Messages.MovePlayer> moveActions) {
+        for (int slot = 0; slot < players.size(); slot++) {
+            Physics.applyMove(players.getBody(slot), moveActions.get(players.getId(slot)));
+        }
     }
 
     private void processRotationActions(Map<Integer, Messages.RotatePlayer> rotationActions) {
         for (Map.Entry<Integer, Messages.RotatePlayer> action : rotationActions.entrySet()) {
-            int playerId = action.getKey();
-            if (!isPlayerPresent(playerId)) {
+            int slot = players.slotOf(action.getKey());
+            if (slot == -1) {
                 continue;
             }
-            Messages.RotatePlayer rotation = action.getValue();
-            playerAngles.put(playerId, rotation.angle);
+            players.setAngle(slot, action.getValue().angle);
         }
     }
 
     private void processShootActions(Map<Integer, Messages.ShootAt> shootActions) {
         for (Map.Entry<Integer, Messages.ShootAt> action : shootActions.entrySet()) {
             int playerId = action.getKey();
-            if (!isPlayerPresent(playerId)) {
+            int slot = players.slotOf(playerId);
+            if (slot == -1) {
                 continue;
             }
             // Fire rate limit
-            Long previousShotTick = previousShootActionTicks.get(playerId);
-            if (previousShotTick != null && currentTick - previousShotTick < MIN_SHOOTING_CYCLE_IN_TICKS) {
+            if (currentTick - players.getLastShotTick(slot) < minShootingCycleInTicks) {
                 continue;
             }
-            previousShootActionTicks.put(playerId, currentTick);
+            players.setLastShotTick(slot, currentTick);
             // Empty magazine
-            Integer ammoCount = magazineAmmoCounts.get(playerId);
+            int ammoCount = players.getAmmoCount(slot);
             assertState(ammoCount >= 0, "ammo count must be non-negative");
             if (ammoCount == 0) {
                 wasDryFire = true;
                 continue;
             }
-            if (isPlayerReloading(playerId)) {
+            if (isPlayerReloading(slot)) {
                 continue;
             }
             Messages.ShootAt shootAt = action.getValue();
             Vector2 target = new Vector2(shootAt.x, shootAt.y);
-            Body body = playerBodies.get(playerId);
+            Body body = players.getBody(slot);
 
             Vector2 playerPosition = body.getPosition();
             Vector2 aim = target.cpy().sub(playerPosition);
-            if (aim.len() < PLAYER_CIRCLE_RADIUS) {
+            if (aim.len() < Physics.PLAYER_CIRCLE_RADIUS) {
                 continue;
             }
             aim.nor();
             // the offset is needed to eliminate bullet-shooter collision
-            Vector2 offset = aim.cpy().scl(PLAYER_CIRCLE_RADIUS + 3 * BULLET_CIRCLE_RADIUS);
-            Body bullet = createCircleBody(BULLET_CIRCLE_RADIUS, playerPosition.cpy().add(offset));
-            bullet.setUserData(new Bullet());
+            Vector2 offset = aim.cpy().scl(Physics.PLAYER_CIRCLE_RADIUS + 3 * Physics.BULLET_CIRCLE_RADIUS);
+            Vector2 bulletPosition = playerPosition.cpy().add(offset);
+            Body bullet = createCircleBody(Physics.BULLET_CIRCLE_RADIUS, bulletPosition);
+            int rewindTicks = rewindTicks(shootAt);
+            if (rewindTicks > 0) {
+                setCollisionFilter(bullet, (short) 1, (short) ~PLAYER_CATEGORY);
+            }
+            bullet.setUserData(new Bullet(nextBulletId, playerId, rewindTicks, bulletPosition));
+            nextBulletId += 1;
             Vector2 bulletVelocity = aim.cpy().scl(gameModelConfig.getBulletSpeed());
             bullet.setLinearVelocity(bulletVelocity);
             bulletBodies.add(bullet);
@@ -363,51 +428,68 @@ public class GameModel {
                 world.destroyBody(bulletBodies.remove());
             }
             wasShot = true;
-            magazineAmmoCounts.put(playerId, magazineAmmoCounts.get(playerId) - 1);
+            players.setAmmoCount(slot, ammoCount - 1);
         }
     }
 
-    private void processReloading(Set<Integer> players) {
-        for (Integer playerId : players) {
-            if (isPlayerReloading(playerId)) {
+    private void processReloading(Set<Integer> reloadingPlayers) {
+        for (Integer playerId : reloadingPlayers) {
+            int slot = players.slotOf(playerId);
+            if (slot == -1 || isPlayerReloading(slot)) {
                 continue;
             }
-            magazineAmmoCounts.put(playerId, gameModelConfig.getMagazineSize());
-            previousReloadActionTicks.put(playerId, currentTick);
+            players.setAmmoCount(slot, gameModelConfig.getMagazineSize());
+            players.setLastReloadTick(slot, currentTick);
             wasReloading = true;
         }
     }
 
-    private boolean isPlayerReloading(int playerId) {
-        Long previousReloadingTick = previousReloadActionTicks.get(playerId);
-        return previousReloadingTick != null && currentTick - previousReloadingTick < RELOAD_TIME_IN_TICKS;
+    private boolean isPlayerReloading(int slot) {
+        return currentTick - players.getLastReloadTick(slot) < reloadTimeInTicks;
     }
 
     public Map<Integer, Player> getPlayers() {
-        Map<Integer, Player> players = new HashMap<>();
-        for (Map.Entry<Integer, Body> entry : playerBodies.entrySet()) {
-            int playerId = entry.getKey();
-            Vector2 center = entry.getValue().getPosition();
+        Map<Integer, Player> result = new HashMap<>();
+        for (int slot = 0; slot < players.size(); slot++) {
+            Body body = players.getBody(slot);
+            Vector2 center = body.getPosition();
             Point position = Point.create(center.x, center.y);
-            Vector2 velocity = entry.getValue().getLinearVelocity();
-            Player player = Player.create(position, velocity, playerAngles.get(playerId), playerHealths.get(playerId));
-            players.put(playerId, player);
+            // The body reuses the vector it returns, the players must not change with the world
+            Vector2 velocity = body.getLinearVelocity().cpy();
+            result.put(
+                    players.getId(slot),
+                    Player.create(position, velocity, players.getAngle(slot), players.getHealth(slot))
+            );
         }
-        return players;
+        return result;
     }
 
     public List<Wall> getWalls() {
         return walls;
     }
 
-    public List<Point> getBulletPositions() {
-        Stream<Point> bullets = bulletBodies.stream().map(
-                (bullet) -> {
-                    Vector2 center = bullet.getPosition();
-                    return Point.create(center.x, center.y);
-                }
-        );
-        return bullets.collect(Collectors.toList());
+    public Map<Integer, Point> getBullets() {
+        Map<Integer, Point> bullets = new HashMap<>();
+        for (Body bullet : bulletBodies) {
+            Vector2 center = bullet.getPosition();
+            bullets.put(((Bullet) bullet.getUserData()).getId(), Point.create(center.x, center.y));
+        }
+        return bullets;
+    }
+
+    /**
+     * @return the players near each player at the end of the last step, the same object every tick
+     */
+    public Neighbours getNeighbours() {
+        return neighbours;
+    }
+
+    public int getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    public long getCurrentTick() {
+        return currentTick;
     }
 
     private void queueCollisionEvent(Body playerBody, Body bulletBody) {
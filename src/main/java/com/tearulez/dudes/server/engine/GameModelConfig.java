@@ -1,26 +1,286 @@
 package com.tearulez.dudes.server.engine;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * Settings of the server, parsed and validated once.
+ * Instances are immutable; a changed config is a new instance, which the game picks up at a tick boundary.
+ * Settings read when the server starts do not change for a running server, a saved config must keep them.
+ */
 public class GameModelConfig {
     private static final String MIN_SPAWN_DISTANCE = "minSpawnDistance";
     private static final String BULLET_SPEED = "bulletSpeed";
     private static final String MAGAZINE_SIZE = "magazineSize";
-    private final Map<String, String> configData;
+    private static final String INTEREST_RADIUS = "interestRadius";
+    private static final String INTEREST_LINE_OF_SIGHT = "interestLineOfSight";
+    private static final String OUTBOUND_HIGH_WATERMARK = "outboundHighWatermark";
+    private static final String OUTBOUND_LOW_WATERMARK = "outboundLowWatermark";
+    private static final String SLOW_CLIENT_POLICY = "slowClientPolicy";
+    private static final String DATAGRAMS = "datagrams";
+    private static final String MAX_FRAME_SIZE = "maxFrameSize";
+    private static final String MAX_REWIND_MILLIS = "maxRewindMillis";
+    private static final String TICKS_PER_SECOND = "ticksPerSecond";
+    private static final String SNAPSHOTS_PER_SECOND = "snapshotsPerSecond";
+    private static final String MIN_SNAPSHOTS_PER_SECOND = "minSnapshotsPerSecond";
+    private static final String ROOMS = "rooms";
+    private static final String MAX_PLAYERS_PER_ROOM = "maxPlayersPerRoom";
+    private static final String BOTS = "bots";
 
+    private final float minSpawnDistance;
+    private final float bulletSpeed;
+    private final int magazineSize;
+    private final float interestRadius;
+    private final boolean interestLineOfSight;
+    private final int outboundHighWatermark;
+    private final int outboundLowWatermark;
+    private final String slowClientPolicy;
+    private final boolean datagrams;
+    private final int maxFrameSize;
+    private final int maxRewindMillis;
+    private final int ticksPerSecond;
+    private final int snapshotsPerSecond;
+    private final int minSnapshotsPerSecond;
+    private final int rooms;
+    private final int maxPlayersPerRoom;
+    private final int bots;
+
+    /**
+     * @throws IllegalArgumentException listing every missing or invalid setting
+     */
     public GameModelConfig(Map<String, String> configData) {
-        this.configData = configData;
+        Parser parser = new Parser(configData);
+        minSpawnDistance = parser.parseFloat(MIN_SPAWN_DISTANCE);
+        bulletSpeed = parser.parseFloat(BULLET_SPEED);
+        magazineSize = parser.parseInt(MAGAZINE_SIZE);
+        interestRadius = parser.parseFloat(INTEREST_RADIUS);
+        interestLineOfSight = parser.parseBoolean(INTEREST_LINE_OF_SIGHT);
+        outboundHighWatermark = parser.parseInt(OUTBOUND_HIGH_WATERMARK);
+        outboundLowWatermark = parser.parseInt(OUTBOUND_LOW_WATERMARK);
+        slowClientPolicy = parser.parseString(SLOW_CLIENT_POLICY);
+        datagrams = parser.parseBoolean(DATAGRAMS);
+        maxFrameSize = parser.parseInt(MAX_FRAME_SIZE);
+        maxRewindMillis = parser.parseInt(MAX_REWIND_MILLIS);
+        ticksPerSecond = parser.parseInt(TICKS_PER_SECOND);
+        snapshotsPerSecond = parser.parseInt(SNAPSHOTS_PER_SECOND);
+        minSnapshotsPerSecond = parser.parseInt(MIN_SNAPSHOTS_PER_SECOND);
+        rooms = parser.parseInt(ROOMS);
+        maxPlayersPerRoom = parser.parseInt(MAX_PLAYERS_PER_ROOM);
+        bots = parser.parseInt(BOTS);
+
+        parser.check(MIN_SPAWN_DISTANCE, minSpawnDistance >= 0, "should not be negative");
+        parser.check(BULLET_SPEED, bulletSpeed > 0, "should be positive");
+        parser.check(MAGAZINE_SIZE, magazineSize > 0, "should be positive");
+        parser.check(INTEREST_RADIUS, interestRadius >= 0, "should not be negative");
+        parser.check(OUTBOUND_LOW_WATERMARK, outboundLowWatermark >= 0, "should not be negative");
+        parser.check(
+                OUTBOUND_HIGH_WATERMARK,
+                outboundHighWatermark >= outboundLowWatermark,
+                "should not be less than " + OUTBOUND_LOW_WATERMARK
+        );
+        parser.check(MAX_FRAME_SIZE, maxFrameSize > 0, "should be positive");
+        parser.check(MAX_REWIND_MILLIS, maxRewindMillis >= 0, "should not be negative");
+        parser.check(TICKS_PER_SECOND, ticksPerSecond > 0, "should be positive");
+        parser.check(MIN_SNAPSHOTS_PER_SECOND, minSnapshotsPerSecond > 0, "should be positive");
+        parser.check(
+                SNAPSHOTS_PER_SECOND,
+                snapshotsPerSecond >= minSnapshotsPerSecond,
+                "should not be less than " + MIN_SNAPSHOTS_PER_SECOND
+        );
+        parser.check(ROOMS, rooms > 0, "should be positive");
+        parser.check(MAX_PLAYERS_PER_ROOM, maxPlayersPerRoom > 0, "should be positive");
+        parser.check(BOTS, bots >= 0, "should not be negative");
+        parser.throwIfInvalid();
     }
 
     float getMinSpawnDistance() {
-        return Float.valueOf(configData.get(MIN_SPAWN_DISTANCE));
+        return minSpawnDistance;
     }
 
     public float getBulletSpeed() {
-        return Float.valueOf(configData.get(BULLET_SPEED));
+        return bulletSpeed;
     }
 
     int getMagazineSize() {
-        return Integer.valueOf(configData.get(MAGAZINE_SIZE));
+        return magazineSize;
+    }
+
+    /**
+     * @return the distance within which a client is sent the players and bullets around it,
+     * 0 to send every client the whole world
+     */
+    public float getInterestRadius() {
+        return interestRadius;
+    }
+
+    public boolean getInterestLineOfSight() {
+        return interestLineOfSight;
+    }
+
+    public int getOutboundHighWatermark() {
+        return outboundHighWatermark;
+    }
+
+    public int getOutboundLowWatermark() {
+        return outboundLowWatermark;
+    }
+
+    /**
+     * @return the name of the policy for clients that do not keep up, checked by the server that applies it
+     */
+    public String getSlowClientPolicy() {
+        return slowClientPolicy;
+    }
+
+    public boolean getDatagrams() {
+        return datagrams;
+    }
+
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    /**
+     * @return how far back in time shots of lagging players may be checked, read when the server starts
+     */
+    int getMaxRewindMillis() {
+        return maxRewindMillis;
+    }
+
+    /**
+     * @return the simulation rate, read when the server starts
+     */
+    public int getTicksPerSecond() {
+        return ticksPerSecond;
+    }
+
+    /**
+     * @return the rate snapshots are sent at to clients that keep up with it
+     */
+    public int getSnapshotsPerSecond() {
+        return snapshotsPerSecond;
+    }
+
+    /**
+     * @return the rate snapshots are sent at to clients whose bandwidth is not enough for more
+     */
+    public int getMinSnapshotsPerSecond() {
+        return minSnapshotsPerSecond;
+    }
+
+    /**
+     * @return the number of matches run side by side, read when the server starts
+     */
+    public int getRooms() {
+        return rooms;
+    }
+
+    /**
+     * @return the number of clients a room accepts, read when the server starts
+     */
+    public int getMaxPlayersPerRoom() {
+        return maxPlayersPerRoom;
+    }
+
+    /**
+     * @return the number of bots in each room, read when the server starts
+     */
+    public int getBots() {
+        return bots;
+    }
+
+    /**
+     * Collects the errors of all settings, so they can be reported at once.
+     * A setting that could not be parsed gets a default value and is not checked further.
+     */
+    /**
+     * @return the names of the settings read when the server starts whose values differ in the other config
+     */
+    public List<String> changedStartupSettings(GameModelConfig other) {
+        List<String> changed = new ArrayList<>();
+        addIfChanged(changed, OUTBOUND_HIGH_WATERMARK, outboundHighWatermark, other.outboundHighWatermark);
+        addIfChanged(changed, OUTBOUND_LOW_WATERMARK, outboundLowWatermark, other.outboundLowWatermark);
+        addIfChanged(changed, SLOW_CLIENT_POLICY, slowClientPolicy, other.slowClientPolicy);
+        addIfChanged(changed, DATAGRAMS, datagrams, other.datagrams);
+        addIfChanged(changed, MAX_FRAME_SIZE, maxFrameSize, other.maxFrameSize);
+        addIfChanged(changed, MAX_REWIND_MILLIS, maxRewindMillis, other.maxRewindMillis);
+        addIfChanged(changed, TICKS_PER_SECOND, ticksPerSecond, other.ticksPerSecond);
+        addIfChanged(changed, ROOMS, rooms, other.rooms);
+        addIfChanged(changed, MAX_PLAYERS_PER_ROOM, maxPlayersPerRoom, other.maxPlayersPerRoom);
+        addIfChanged(changed, BOTS, bots, other.bots);
+        return changed;
+    }
+
+    private static void addIfChanged(List<String> changed, String key, Object value, Object otherValue) {
+        if (!value.equals(otherValue)) {
+            changed.add(key);
+        }
+    }
+
+    private static class Parser {
+        private final Map<String, String> configData;
+        private final List<String> errors = new ArrayList<>();
+        private final Set<String> invalidKeys = new HashSet<>();
+
+        Parser(Map<String, String> configData) {
+            this.configData = configData;
+        }
+
+        String parseString(String key) {
+            String value = configData.get(key);
+            if (value == null) {
+                error(key, "is missing");
+                return "";
+            }
+            return value.trim();
+        }
+
+        int parseInt(String key) {
+            String value = parseString(key);
+            try {
+                return invalidKeys.contains(key) ? 0 : Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                error(key, "should be an integer, got '" + value + "'");
+                return 0;
+            }
+        }
+
+        float parseFloat(String key) {
+            String value = parseString(key);
+            try {
+                return invalidKeys.contains(key) ? 0 : Float.parseFloat(value);
+            } catch (NumberFormatException e) {
+                error(key, "should be a number, got '" + value + "'");
+                return 0;
+            }
+        }
+
+        boolean parseBoolean(String key) {
+            String value = parseString(key);
+            if (!invalidKeys.contains(key) && !value.equals("true") && !value.equals("false")) {
+                error(key, "should be true or false, got '" + value + "'");
+            }
+            return value.equals("true");
+        }
+
+        void check(String key, boolean valid, String description) {
+            if (!valid && !invalidKeys.contains(key)) {
+                error(key, description);
+            }
+        }
+
+        void throwIfInvalid() {
+            if (!errors.isEmpty()) {
+                throw new IllegalArgumentException(String.join("\n", errors));
+            }
+        }
+
+        private void error(String key, String description) {
+            invalidKeys.add(key);
+            errors.add(key + " " + description);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,146 @@
+package com.tearulez.dudes.server.engine;
+
+import com.badlogic.gdx.utils.BooleanArray;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.IntIntMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * The players near each player at the end of a tick, with their distance and whether a wall is between them.
+ * Computed once per tick by the model and read by everyone who needs to know who sees whom.
+ * The neighbours of a player form a row; rows are stored back to back in flat arrays.
+ * With many players, the rows are computed in parallel, in chunks forked from the current fork-join pool.
+ */
+public class Neighbours {
+    // Fewer players are not worth forking for
+    private static final int PARALLEL_THRESHOLD = 64;
+    private static final int ROWS_PER_CHUNK = 32;
+
+    private final IntIntMap rows = new IntIntMap();
+    private final IntArray rowStarts = new IntArray();
+    private final IntArray ids = new IntArray();
+    private final FloatArray distances = new FloatArray();
+    private final BooleanArray visible = new BooleanArray();
+    // Buffers of the chunks, reused tick after tick
+    private final List<Chunk> chunks = new ArrayList<>();
+
+    private static class Chunk {
+        int fromSlot;
+        int toSlot;
+        final IntArray rowStarts = new IntArray();
+        final IntArray ids = new IntArray();
+        final FloatArray distances = new FloatArray();
+        final BooleanArray visible = new BooleanArray();
+        final IntArray candidates = new IntArray();
+    }
+
+    /**
+     * @return the row of the player or -1 if it is not present
+     */
+    public int rowOf(int playerId) {
+        return rows.get(playerId, -1);
+    }
+
+    /**
+     * @return the index of the first neighbour of the row
+     */
+    public int start(int row) {
+        return rowStarts.get(row);
+    }
+
+    /**
+     * @return the index after the last neighbour of the row
+     */
+    public int end(int row) {
+        return rowStarts.get(row + 1);
+    }
+
+    public int getId(int index) {
+        return ids.get(index);
+    }
+
+    public float getDistance(int index) {
+        return distances.get(index);
+    }
+
+    /**
+     * @return true if no wall is between the player and the neighbour
+     */
+    public boolean isVisible(int index) {
+        return visible.get(index);
+    }
+
+    /**
+     * Finds the neighbours within the radius of all players, the player in slot i has the i-th row.
+     *
+     * @param grid the positions indexed by slot
+     */
+    void update(int[] playerIds, float[] xs, float[] ys, int count, SpatialGrid grid, WallIndex walls, float radius) {
+        int chunkCount = count < PARALLEL_THRESHOLD ? 1 : (count + ROWS_PER_CHUNK - 1) / ROWS_PER_CHUNK;
+        while (chunks.size() < chunkCount) {
+            chunks.add(new Chunk());
+        }
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            Chunk chunk = chunks.get(i);
+            chunk.fromSlot = i * count / chunkCount;
+            chunk.toSlot = (i + 1) * count / chunkCount;
+            tasks.add(ForkJoinTask.adapt(() -> computeRows(chunk, playerIds, xs, ys, grid, walls, radius)));
+        }
+        if (chunkCount == 1) {
+            tasks.get(0).invoke();
+        } else {
+            ForkJoinTask.invokeAll(tasks);
+        }
+
+        rows.clear();
+        rowStarts.clear();
+        ids.clear();
+        distances.clear();
+        visible.clear();
+        for (int i = 0; i < chunkCount; i++) {
+            Chunk chunk = chunks.get(i);
+            int offset = ids.size;
+            for (int row = 0; row < chunk.rowStarts.size; row++) {
+                rowStarts.add(offset + chunk.rowStarts.get(row));
+            }
+            ids.addAll(chunk.ids);
+            distances.addAll(chunk.distances);
+            visible.addAll(chunk.visible);
+        }
+        rowStarts.add(ids.size);
+        for (int slot = 0; slot < count; slot++) {
+            rows.put(playerIds[slot], slot);
+        }
+    }
+
+    private static void computeRows(Chunk chunk, int[] playerIds, float[] xs, float[] ys, SpatialGrid grid,
+                                    WallIndex walls, float radius) {
+        chunk.rowStarts.clear();
+        chunk.ids.clear();
+        chunk.distances.clear();
+        chunk.visible.clear();
+        for (int slot = chunk.fromSlot; slot < chunk.toSlot; slot++) {
+            chunk.rowStarts.add(chunk.ids.size);
+            float x = xs[slot];
+            float y = ys[slot];
+            chunk.candidates.clear();
+            grid.query(x, y, radius, chunk.candidates);
+            for (int i = 0; i < chunk.candidates.size; i++) {
+                int otherSlot = chunk.candidates.get(i);
+                if (otherSlot == slot) {
+                    continue;
+                }
+                float dx = xs[otherSlot] - x;
+                float dy = ys[otherSlot] - y;
+                chunk.ids.add(playerIds[otherSlot]);
+                chunk.distances.add((float) Math.sqrt(dx * dx + dy * dy));
+                chunk.visible.add(!walls.isBlocked(x, y, xs[otherSlot], ys[otherSlot]));
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.tearulez.dudes.server.engine;
+
+import com.badlogic.gdx.math.Vector2;
+
+import java.util.Arrays;
+
+import static com.tearulez.dudes.server.Assertions.require;
+
+/**
+ * Player positions of the last ticks, so shots can be checked against the world the shooter saw.
+ * Rows are kept in flat primitive arrays reused tick after tick, one row per tick.
+ */
+class PlayerHistory {
+    private static final int INITIAL_ROW_SIZE = 16;
+
+    private final int capacity;
+    private final long[] ticks;
+    private final int[] sizes;
+    private int rowSize = INITIAL_ROW_SIZE;
+    private int currentRow = 0;
+    private int[] ids;
+    private float[] xs;
+    private float[] ys;
+
+    /**
+     * @param capacity number of ticks kept, including the current one
+     */
+    PlayerHistory(int capacity) {
+        require(capacity > 0, "history capacity should be positive");
+        this.capacity = capacity;
+        ticks = new long[capacity];
+        sizes = new int[capacity];
+        Arrays.fill(ticks, -1);
+        ids = new int[capacity * rowSize];
+        xs = new float[capacity * rowSize];
+        ys = new float[capacity * rowSize];
+    }
+
+    /**
+     * Starts the row of a new tick, it replaces the oldest one.
+     */
+    void startTick(long tick) {
+        currentRow = (int) (tick % capacity);
+        ticks[currentRow] = tick;
+        sizes[currentRow] = 0;
+    }
+
+    void add(int playerId, float x, float y) {
+        if (sizes[currentRow] == rowSize) {
+            grow();
+        }
+        int index = currentRow * rowSize + sizes[currentRow];
+        ids[index] = playerId;
+        xs[index] = x;
+        ys[index] = y;
+        sizes[currentRow] += 1;
+    }
+
+    /**
+     * Finds the first player, other than the shooter, a bullet moving along the segment hit at the given tick.
+     *
+     * @param radius distance between the centers of a player and a bullet touching it
+     * @return the player id or -1 if the segment hits nobody or the tick is no longer kept
+     */
+    int firstHit(long tick, int shooterId, Vector2 from, Vector2 to, float radius) {
+        int row = (int) (tick % capacity);
+        if (tick < 0 || ticks[row] != tick) {
+            return -1;
+        }
+        float dx = to.x - from.x;
+        float dy = to.y - from.y;
+        float length2 = dx * dx + dy * dy;
+        int hit = -1;
+        float hitFraction = Float.MAX_VALUE;
+        int offset = row * rowSize;
+        for (int i = offset; i < offset + sizes[row]; i++) {
+            if (ids[i] == shooterId) {
+                continue;
+            }
+            // Closest point of the segment to the player's center
+            float fraction = length2 > 0 ? ((xs[i] - from.x) * dx + (ys[i] - from.y) * dy) / length2 : 0;
+            fraction = Math.max(0, Math.min(1, fraction));
+            float ox = from.x + dx * fraction - xs[i];
+            float oy = from.y + dy * fraction - ys[i];
+            if (ox * ox + oy * oy <= radius * radius && fraction < hitFraction) {
+                hit = ids[i];
+                hitFraction = fraction;
+            }
+        }
+        return hit;
+    }
+
+    private void grow() {
+        int newRowSize = rowSize * 2;
+        int[] newIds = new int[capacity * newRowSize];
+        float[] newXs = new float[capacity * newRowSize];
+        float[] newYs = new float[capacity * newRowSize];
+        for (int row = 0; row < capacity; row++) {
+            System.arraycopy(ids, row * rowSize, newIds, row * newRowSize, sizes[row]);
+            System.arraycopy(xs, row * rowSize, newXs, row * newRowSize, sizes[row]);
+            System.arraycopy(ys, row * rowSize, newYs, row * newRowSize, sizes[row]);
+        }
+        rowSize = newRowSize;
+        ids = newIds;
+        xs = newXs;
+        ys = newYs;
+    }
+}
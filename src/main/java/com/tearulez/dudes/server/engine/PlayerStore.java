@@ -0,0 +1,147 @@
+package com.tearulez.dudes.server.engine;
+
+import com.badlogic.gdx.physics.box2d.Body;
+import com.badlogic.gdx.utils.IntIntMap;
+
+import java.util.Arrays;
+
+import static com.tearulez.dudes.server.Assertions.require;
+
+/**
+ * State of the present players in parallel arrays, one slot per player.
+ * Slots stay dense: a removed player's slot is taken by the last one, so the slots below {@link #size()}
+ * are exactly the present players. A slot is only valid until the next removal.
+ */
+class PlayerStore {
+    // Tick of an action the player has not done yet, far enough in the past for any cooldown to be over
+    static final long NEVER = Long.MIN_VALUE / 2;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final IntIntMap slots = new IntIntMap();
+    private int size = 0;
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private Body[] bodies = new Body[INITIAL_CAPACITY];
+    private float[] angles = new float[INITIAL_CAPACITY];
+    private int[] healths = new int[INITIAL_CAPACITY];
+    private int[] ammoCounts = new int[INITIAL_CAPACITY];
+    private long[] lastShotTicks = new long[INITIAL_CAPACITY];
+    private long[] lastReloadTicks = new long[INITIAL_CAPACITY];
+
+    /**
+     * @return the slot of the new player
+     */
+    int add(int playerId, Body body, int health, int ammoCount) {
+        require(!contains(playerId), "player " + playerId + " should not be present");
+        if (size == ids.length) {
+            grow();
+        }
+        int slot = size;
+        ids[slot] = playerId;
+        bodies[slot] = body;
+        angles[slot] = 0;
+        healths[slot] = health;
+        ammoCounts[slot] = ammoCount;
+        lastShotTicks[slot] = NEVER;
+        lastReloadTicks[slot] = NEVER;
+        slots.put(playerId, slot);
+        size += 1;
+        return slot;
+    }
+
+    /**
+     * @return the body of the removed player
+     */
+    Body remove(int playerId) {
+        int slot = slots.remove(playerId, -1);
+        require(slot != -1, "player " + playerId + " should be present");
+        Body body = bodies[slot];
+        int last = size - 1;
+        if (slot != last) {
+            ids[slot] = ids[last];
+            bodies[slot] = bodies[last];
+            angles[slot] = angles[last];
+            healths[slot] = healths[last];
+            ammoCounts[slot] = ammoCounts[last];
+            lastShotTicks[slot] = lastShotTicks[last];
+            lastReloadTicks[slot] = lastReloadTicks[last];
+            slots.put(ids[slot], slot);
+        }
+        bodies[last] = null;
+        size = last;
+        return body;
+    }
+
+    boolean contains(int playerId) {
+        return slots.containsKey(playerId);
+    }
+
+    /**
+     * @return the slot of the player or -1 if it is not present
+     */
+    int slotOf(int playerId) {
+        return slots.get(playerId, -1);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getId(int slot) {
+        return ids[slot];
+    }
+
+    Body getBody(int slot) {
+        return bodies[slot];
+    }
+
+    float getAngle(int slot) {
+        return angles[slot];
+    }
+
+    void setAngle(int slot, float angle) {
+        angles[slot] = angle;
+    }
+
+    int getHealth(int slot) {
+        return healths[slot];
+    }
+
+    void setHealth(int slot, int health) {
+        healths[slot] = health;
+    }
+
+    int getAmmoCount(int slot) {
+        return ammoCounts[slot];
+    }
+
+    void setAmmoCount(int slot, int ammoCount) {
+        ammoCounts[slot] = ammoCount;
+    }
+
+    long getLastShotTick(int slot) {
+        return lastShotTicks[slot];
+    }
+
+    void setLastShotTick(int slot, long tick) {
+        lastShotTicks[slot] = tick;
+    }
+
+    long getLastReloadTick(int slot) {
+        return lastReloadTicks[slot];
+    }
+
+    void setLastReloadTick(int slot, long tick) {
+        lastReloadTicks[slot] = tick;
+    }
+
+    private void grow() {
+        int capacity = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacity);
+        bodies = Arrays.copyOf(bodies, capacity);
+        angles = Arrays.copyOf(angles, capacity);
+        healths = Arrays.copyOf(healths, capacity);
+        ammoCounts = Arrays.copyOf(ammoCounts, capacity);
+        lastShotTicks = Arrays.copyOf(lastShotTicks, capacity);
+        lastReloadTicks = Arrays.copyOf(lastReloadTicks, capacity);
+    }
+}
@@ -3,6 +3,8 @@ package com.tearulez.dudes.server.engine;
 import com.tearulez.dudes.common.snapshot.Point;
 import com.tearulez.dudes.server.Assertions;
 
+import java.util.SplittableRandom;
+
 public class Rect {
     private float xmin;
     private float xmax;
@@ -18,9 +20,9 @@ public class Rect {
         this.ymax = ymax;
     }
 
-    Point getRandomPoint() {
-        float x = xmin + (xmax - xmin) * (float) Math.random();
-        float y = ymin + (ymax - ymin) * (float) Math.random();
+    Point getRandomPoint(SplittableRandom random) {
+        float x = xmin + (xmax - xmin) * (float) random.nextDouble();
+        float y = ymin + (ymax - ymin) * (float) random.nextDouble();
         return Point.create(x, y);
     }
 
@@ -0,0 +1,82 @@
+package com.tearulez.dudes.server.engine;
+
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongMap;
+
+import static com.tearulez.dudes.server.Assertions.require;
+
+/**
+ * Uniform grid index of points identified by int ids.
+ * Rebuild it with {@link #clear()} and {@link #add} whenever positions change.
+ */
+public class SpatialGrid {
+    private final float cellSize;
+    private final IntArray ids = new IntArray();
+    private final FloatArray xs = new FloatArray();
+    private final FloatArray ys = new FloatArray();
+    // cell key -> indices of the entries in that cell
+    private final LongMap<IntArray> cells = new LongMap<>();
+
+    public SpatialGrid(float cellSize) {
+        require(cellSize > 0, "cell size should be positive");
+        this.cellSize = cellSize;
+    }
+
+    public void clear() {
+        ids.clear();
+        xs.clear();
+        ys.clear();
+        for (IntArray cell : cells.values()) {
+            cell.clear();
+        }
+    }
+
+    public void add(int id, float x, float y) {
+        long key = cellKey(cellCoordinate(x), cellCoordinate(y));
+        IntArray cell = cells.get(key);
+        if (cell == null) {
+            cell = new IntArray();
+            cells.put(key, cell);
+        }
+        cell.add(ids.size);
+        ids.add(id);
+        xs.add(x);
+        ys.add(y);
+    }
+
+    /**
+     * Adds to the result ids of all points within the radius of the given center.
+     */
+    public void query(float x, float y, float radius, IntArray result) {
+        float radius2 = radius * radius;
+        int minX = cellCoordinate(x - radius);
+        int maxX = cellCoordinate(x + radius);
+        int minY = cellCoordinate(y - radius);
+        int maxY = cellCoordinate(y + radius);
+        for (int cx = minX; cx <= maxX; cx++) {
+            for (int cy = minY; cy <= maxY; cy++) {
+                IntArray cell = cells.get(cellKey(cx, cy));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size; i++) {
+                    int index = cell.get(i);
+                    float dx = xs.get(index) - x;
+                    float dy = ys.get(index) - y;
+                    if (dx * dx + dy * dy < radius2) {
+                        result.add(ids.get(index));
+                    }
+                }
+            }
+        }
+    }
+
+    private int cellCoordinate(float value) {
+        return (int) Math.floor(value / cellSize);
+    }
+
+    private static long cellKey(int cx, int cy) {
+        return ((long) cx << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,264 @@
+package com.tearulez.dudes.server.engine;
+
+import com.tearulez.dudes.common.snapshot.Point;
+import com.tearulez.dudes.common.snapshot.Wall;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.tearulez.dudes.server.Assertions.require;
+
+/**
+ * Bounding volume hierarchy over the edges of the walls, built once since walls do not move.
+ * Answers whether a segment crosses a wall without the physics world.
+ * Nodes are stored in depth-first order with the index of the node following each subtree,
+ * so a query walks the tree without a stack: it neither allocates nor changes the index,
+ * and any number of threads may query at once.
+ */
+class WallIndex {
+    private static final int MAX_LEAF_SIZE = 4;
+
+    // Edge i goes from (x1[i], y1[i]) to (x2[i], y2[i])
+    private final float[] x1;
+    private final float[] y1;
+    private final float[] x2;
+    private final float[] y2;
+
+    private final float[] minX;
+    private final float[] minY;
+    private final float[] maxX;
+    private final float[] maxY;
+    // First edge of a leaf or -1 for an inner node, whose children follow it
+    private final int[] firstEdge;
+    private final int[] edgeCount;
+    // Node following the subtree of a node
+    private final int[] skip;
+    private int nodeCount = 0;
+
+    private WallIndex(float[] x1, float[] y1, float[] x2, float[] y2) {
+        this.x1 = x1;
+        this.y1 = y1;
+        this.x2 = x2;
+        this.y2 = y2;
+        int capacity = Math.max(1, 2 * x1.length);
+        minX = new float[capacity];
+        minY = new float[capacity];
+        maxX = new float[capacity];
+        maxY = new float[capacity];
+        firstEdge = new int[capacity];
+        edgeCount = new int[capacity];
+        skip = new int[capacity];
+    }
+
+    /**
+     * Indexes the outlines of the walls, a closed polygon each.
+     */
+    static WallIndex create(List<Wall> walls) {
+        List<float[]> edges = new ArrayList<>();
+        for (Wall wall : walls) {
+            Point position = wall.getPosition();
+            List<Point> points = wall.getPoints();
+            for (int i = 0; i < points.size() && points.size() > 1; i++) {
+                Point from = points.get(i);
+                Point to = points.get((i + 1) % points.size());
+                edges.add(new float[]{
+                        position.x + from.x, position.y + from.y, position.x + to.x, position.y + to.y
+                });
+            }
+        }
+        int size = edges.size();
+        float[] x1 = new float[size];
+        float[] y1 = new float[size];
+        float[] x2 = new float[size];
+        float[] y2 = new float[size];
+        for (int i = 0; i < size; i++) {
+            float[] edge = edges.get(i);
+            x1[i] = edge[0];
+            y1[i] = edge[1];
+            x2[i] = edge[2];
+            y2[i] = edge[3];
+        }
+        WallIndex index = new WallIndex(x1, y1, x2, y2);
+        if (size > 0) {
+            index.build(0, size);
+        }
+        return index;
+    }
+
+    int getEdgeCount() {
+        return x1.length;
+    }
+
+    /**
+     * @return true if the segment crosses or touches a wall edge
+     */
+    boolean isBlocked(float fromX, float fromY, float toX, float toY) {
+        float segmentMinX = Math.min(fromX, toX);
+        float segmentMinY = Math.min(fromY, toY);
+        float segmentMaxX = Math.max(fromX, toX);
+        float segmentMaxY = Math.max(fromY, toY);
+        int node = 0;
+        while (node < nodeCount) {
+            if (segmentMaxX < minX[node] || segmentMinX > maxX[node]
+                    || segmentMaxY < minY[node] || segmentMinY > maxY[node]
+                    || !crossesBox(node, fromX, fromY, toX, toY)) {
+                node = skip[node];
+                continue;
+            }
+            if (firstEdge[node] != -1) {
+                int end = firstEdge[node] + edgeCount[node];
+                for (int i = firstEdge[node]; i < end; i++) {
+                    if (intersect(fromX, fromY, toX, toY, x1[i], y1[i], x2[i], y2[i])) {
+                        return true;
+                    }
+                }
+                node = skip[node];
+            } else {
+                node += 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks a batch of segments, packed as four floats each: from x, from y, to x, to y.
+     *
+     * @param from    index of the first segment to check
+     * @param to      index after the last segment to check
+     * @param blocked set for every checked segment to whether it crosses a wall
+     */
+    void areBlocked(float[] segments, int from, int to, boolean[] blocked) {
+        require(to * 4 <= segments.length && to <= blocked.length, "batch should fit the arrays");
+        for (int i = from; i < to; i++) {
+            int offset = i * 4;
+            blocked[i] = isBlocked(segments[offset], segments[offset + 1], segments[offset + 2], segments[offset + 3]);
+        }
+    }
+
+    // Builds the subtree of the edges in [start, end)
+    private void build(int start, int end) {
+        int node = nodeCount;
+        nodeCount += 1;
+        float boxMinX = Float.MAX_VALUE;
+        float boxMinY = Float.MAX_VALUE;
+        float boxMaxX = -Float.MAX_VALUE;
+        float boxMaxY = -Float.MAX_VALUE;
+        for (int i = start; i < end; i++) {
+            boxMinX = Math.min(boxMinX, Math.min(x1[i], x2[i]));
+            boxMinY = Math.min(boxMinY, Math.min(y1[i], y2[i]));
+            boxMaxX = Math.max(boxMaxX, Math.max(x1[i], x2[i]));
+            boxMaxY = Math.max(boxMaxY, Math.max(y1[i], y2[i]));
+        }
+        minX[node] = boxMinX;
+        minY[node] = boxMinY;
+        maxX[node] = boxMaxX;
+        maxY[node] = boxMaxY;
+        if (end - start <= MAX_LEAF_SIZE) {
+            firstEdge[node] = start;
+            edgeCount[node] = end - start;
+        } else {
+            firstEdge[node] = -1;
+            // Split at the median of the edge centers along the longer side of the box
+            boolean alongX = boxMaxX - boxMinX >= boxMaxY - boxMinY;
+            int middle = (start + end) / 2;
+            select(start, end, middle, alongX);
+            build(start, middle);
+            build(middle, end);
+        }
+        skip[node] = nodeCount;
+    }
+
+    // Partially sorts the edges in [start, end) by their centers, so that the k-th one is in place
+    private void select(int start, int end, int k, boolean alongX) {
+        int low = start;
+        int high = end - 1;
+        while (low < high) {
+            float pivot = center(low + (high - low) / 2, alongX);
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (center(i, alongX) < pivot) {
+                    i++;
+                }
+                while (center(j, alongX) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(i, j);
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                high = j;
+            } else if (k >= i) {
+                low = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private float center(int edge, boolean alongX) {
+        return alongX ? x1[edge] + x2[edge] : y1[edge] + y2[edge];
+    }
+
+    private void swap(int i, int j) {
+        swap(x1, i, j);
+        swap(y1, i, j);
+        swap(x2, i, j);
+        swap(y2, i, j);
+    }
+
+    private static void swap(float[] values, int i, int j) {
+        float value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+
+    // Slab test of the segment against the box of the node
+    private boolean crossesBox(int node, float fromX, float fromY, float toX, float toY) {
+        float enter = 0;
+        float exit = 1;
+        float dx = toX - fromX;
+        if (dx != 0) {
+            float t1 = (minX[node] - fromX) / dx;
+            float t2 = (maxX[node] - fromX) / dx;
+            enter = Math.max(enter, Math.min(t1, t2));
+            exit = Math.min(exit, Math.max(t1, t2));
+        }
+        float dy = toY - fromY;
+        if (dy != 0) {
+            float t1 = (minY[node] - fromY) / dy;
+            float t2 = (maxY[node] - fromY) / dy;
+            enter = Math.max(enter, Math.min(t1, t2));
+            exit = Math.min(exit, Math.max(t1, t2));
+        }
+        return enter <= exit;
+    }
+
+    private static boolean intersect(float ax, float ay, float bx, float by,
+                                     float cx, float cy, float dx, float dy) {
+        float d1 = cross(cx, cy, dx, dy, ax, ay);
+        float d2 = cross(cx, cy, dx, dy, bx, by);
+        float d3 = cross(ax, ay, bx, by, cx, cy);
+        float d4 = cross(ax, ay, bx, by, dx, dy);
+        if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) {
+            return true;
+        }
+        return (d1 == 0 && onSegment(cx, cy, dx, dy, ax, ay))
+                || (d2 == 0 && onSegment(cx, cy, dx, dy, bx, by))
+                || (d3 == 0 && onSegment(ax, ay, bx, by, cx, cy))
+                || (d4 == 0 && onSegment(ax, ay, bx, by, dx, dy));
+    }
+
+    // Cross product of (b - a) and (p - a), its sign tells the side of the line through a and b p is on
+    private static float cross(float ax, float ay, float bx, float by, float px, float py) {
+        return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+    }
+
+    // Whether p, on the line through a and b, lies within the segment
+    private static boolean onSegment(float ax, float ay, float bx, float by, float px, float py) {
+        return Math.min(ax, bx) <= px && px <= Math.max(ax, bx) && Math.min(ay, by) <= py && py <= Math.max(ay, by);
+    }
+}
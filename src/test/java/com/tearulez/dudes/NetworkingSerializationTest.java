@@ -1,36 +1,95 @@
 package com.tearulez.dudes;
 
 import com.badlogic.gdx.math.Vector2;
+import com.tearulez.dudes.common.MessageCodec;
 import com.tearulez.dudes.common.Messages;
+import com.tearulez.dudes.common.networking.Codec;
 import com.tearulez.dudes.common.snapshot.Player;
 import com.tearulez.dudes.common.snapshot.Point;
+import com.tearulez.dudes.common.snapshot.SnapshotDelta;
 import com.tearulez.dudes.common.snapshot.StateSnapshot;
 import com.tearulez.dudes.common.snapshot.Wall;
+import com.tearulez.dudes.common.snapshot.WorldState;
 import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class NetworkingSerializationTest {
 
     @Test
     public void updateModelMessage() throws Exception {
-        Messages.UpdateModel msg = new Messages.UpdateModel();
-        msg.stateSnapshot = new StateSnapshot.Builder()
-                .setWalls(Collections.singletonList(
-                        Wall.create(
-                                Point.create(0, 0),
-                                Arrays.asList(
-                                        Point.create(10, 0),
-                                        Point.create(0, 10),
-                                        Point.create(0, 0)
-                                ))))
+        Messages.UpdateModel msg = createUpdateModel();
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(buffer);
+        out.writeObject(msg);
+        Messages.UpdateModel deserializedMsg =
+                (Messages.UpdateModel) new ObjectInputStream(
+                        new ByteArrayInputStream(buffer.toByteArray())
+                ).readObject();
+        assertEquals(toStateSnapshot(msg), toStateSnapshot(deserializedMsg));
+    }
+
+    @Test
+    public void updateModelMessageWithBinaryCodec() throws Exception {
+        Messages.UpdateModel msg = createUpdateModel();
+        Messages.UpdateModel decodedMsg = (Messages.UpdateModel) encodeAndDecode(MessageCodec.create(), msg);
+        assertEquals(toStateSnapshot(msg), toStateSnapshot(decodedMsg));
+        assertEquals(msg.lastInputSequence, decodedMsg.lastInputSequence);
+        assertEquals(msg.snapshotDelta.getTick(), decodedMsg.snapshotDelta.getTick());
+        assertEquals(msg.snapshotDelta.getChangedPlayers(), decodedMsg.snapshotDelta.getChangedPlayers());
+    }
+
+    @Test
+    public void updateModelFromSharedDelta() throws Exception {
+        Messages.UpdateModel msg = createUpdateModel();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        MessageCodec.UPDATE_MODEL_HEADER.write(msg, out);
+        ByteBuffer body = MessageCodec.encodeSnapshotDelta(msg.snapshotDelta);
+        out.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+        out.flush();
+        Messages.UpdateModel decodedMsg = (Messages.UpdateModel) MessageCodec.create().decode(
+                new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()))
+        );
+        assertEquals(msg.lastInputSequence, decodedMsg.lastInputSequence);
+        assertEquals(toStateSnapshot(msg), toStateSnapshot(decodedMsg));
+    }
+
+    @Test
+    public void deltaOfViewFromWorldRecords() throws Exception {
+        WorldState world = createUpdateModel().snapshotDelta.apply(Optional.empty());
+        WorldState baseline = world.subset(Collections.emptySet(), Collections.singleton(10));
+        WorldState view = world.subset(Collections.singleton(-1), Collections.singleton(11));
+        SnapshotDelta delta = SnapshotDelta.diff(Optional.of(baseline), view)
+                .setRadii(0.2f, 1)
+                .build();
+
+        // The records of the whole world give the same bytes as encoding the view's entities
+
+        ByteBuffer body = MessageCodec.encodeSnapshotDelta(delta, new MessageCodec.SnapshotRecords(world));
+        assertEquals(MessageCodec.encodeSnapshotDelta(delta), body);
+    }
+
+    @Test
+    public void stateSnapshot() throws Exception {
+        StateSnapshot snapshot = new StateSnapshot.Builder()
+                .setMapHash(createWalls().hashCode())
                 .setOtherPlayers(
                         Collections.singletonList(Player.create(
                                 Point.create(0, 1),
@@ -44,14 +103,105 @@ public class NetworkingSerializationTest {
                         Point.create(1, 1)
                 ))
                 .build();
+        assertEquals(snapshot, encodeAndDecode(MessageCodec.create(), snapshot));
+    }
 
+    @Test
+    public void controlMessagesWithBinaryCodec() throws Exception {
+        Codec codec = MessageCodec.create();
+        Messages.ShootAt shootAt = new Messages.ShootAt();
+        shootAt.x = 1.5f;
+        shootAt.y = -2;
+        Messages.ShootAt decodedShootAt = (Messages.ShootAt) encodeAndDecode(codec, shootAt);
+        assertEquals(shootAt.x, decodedShootAt.x, 0);
+        assertEquals(shootAt.y, decodedShootAt.y, 0);
+
+        Messages.SpawnRequest spawnRequest = new Messages.SpawnRequest();
+        spawnRequest.startingPosition = Point.create(3, 4);
+        Messages.SpawnRequest decodedSpawnRequest = (Messages.SpawnRequest) encodeAndDecode(codec, spawnRequest);
+        assertEquals(spawnRequest.startingPosition, decodedSpawnRequest.startingPosition);
+
+        // Unregistered classes fall back to java serialization
+        assertEquals("test", encodeAndDecode(codec, "test"));
+    }
+
+    @Test
+    public void inputFrameWithBinaryCodec() throws Exception {
+        Messages.InputFrame frame = new Messages.InputFrame();
+        frame.sequence = 300;
+        frame.move = new Messages.MovePlayer();
+        frame.move.dx = -1;
+        frame.move.dy = 1;
+        frame.rotation = new Messages.RotatePlayer();
+        frame.rotation.angle = 1.5f;
+        frame.shot = new Messages.ShootAt();
+        frame.shot.x = 3;
+        frame.shot.y = -4;
+        frame.shot.viewTick = 1234;
+        frame.reload = true;
+        Messages.InputFrame decodedFrame = (Messages.InputFrame) encodeAndDecode(MessageCodec.create(), frame);
+        assertEquals(frame.sequence, decodedFrame.sequence);
+        assertEquals(frame.move.dx, decodedFrame.move.dx, 0);
+        assertEquals(frame.move.dy, decodedFrame.move.dy, 0);
+        assertEquals(frame.rotation.angle, decodedFrame.rotation.angle, 1e-4);
+        assertEquals(frame.shot.x, decodedFrame.shot.x, 0);
+        assertEquals(frame.shot.y, decodedFrame.shot.y, 0);
+        assertEquals(frame.shot.viewTick, decodedFrame.shot.viewTick);
+        assertTrue(decodedFrame.reload);
+    }
+
+    @Test
+    public void mapDataMessageWithBinaryCodec() throws Exception {
+        Messages.MapData msg = new Messages.MapData();
+        msg.walls = createWalls();
+        msg.hash = msg.walls.hashCode();
+        msg.ticksPerSecond = 60;
+        Messages.MapData decodedMsg = (Messages.MapData) encodeAndDecode(MessageCodec.create(), msg);
+        assertEquals(msg.hash, decodedMsg.hash);
+        assertEquals(msg.walls, decodedMsg.walls);
+        assertEquals(msg.ticksPerSecond, decodedMsg.ticksPerSecond);
+    }
+
+    private List<Wall> createWalls() {
+        return Collections.singletonList(
+                Wall.create(
+                        Point.create(0, 0),
+                        Arrays.asList(
+                                Point.create(10, 0),
+                                Point.create(0, 10),
+                                Point.create(0, 0)
+                        )));
+    }
+
+    private Object encodeAndDecode(Codec codec, Object obj) throws Exception {
         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        ObjectOutputStream out = new ObjectOutputStream(buffer);
-        out.writeObject(msg);
-        Messages.UpdateModel deserializedMsg =
-                (Messages.UpdateModel) new ObjectInputStream(
-                        new ByteArrayInputStream(buffer.toByteArray())
-                ).readObject();
-        assertEquals(msg.stateSnapshot, deserializedMsg.stateSnapshot);
+        DataOutputStream out = new DataOutputStream(buffer);
+        codec.encode(obj, out);
+        out.flush();
+        return codec.decode(new DataInputStream(new ByteArrayInputStream(buffer.toByteArray())));
+    }
+
+    private Messages.UpdateModel createUpdateModel() {
+        Map<Integer, Player> players = new HashMap<>();
+        players.put(0, Player.create(Point.create(0, 1), new Vector2(0, 0), 0f, 100));
+        players.put(-1, Player.create(Point.create(-3.3f, 7), new Vector2(1.1f, -2), 1.5f, 42));
+        Map<Integer, Point> bullets = new HashMap<>();
+        bullets.put(10, Point.create(0, 0));
+        bullets.put(11, Point.create(1, 1));
+        WorldState world = WorldState.quantize(120, players, bullets);
+
+        Messages.UpdateModel msg = new Messages.UpdateModel();
+        msg.playerId = 0;
+        msg.lastInputSequence = 300;
+        msg.snapshotDelta = SnapshotDelta.diff(Optional.empty(), world)
+                .setEvents(false, true, false)
+                .setRadii(0.2f, 1)
+                .setMapHash(createWalls().hashCode())
+                .build();
+        return msg;
+    }
+
+    private StateSnapshot toStateSnapshot(Messages.UpdateModel msg) {
+        return msg.snapshotDelta.toStateSnapshot(msg.snapshotDelta.apply(Optional.empty()), msg.playerId);
     }
 }
@@ -0,0 +1,74 @@
+package com.tearulez.dudes.client;
+
+import com.tearulez.dudes.common.MessageCodec;
+import com.tearulez.dudes.common.Messages;
+import com.tearulez.dudes.common.networking.Client;
+import com.tearulez.dudes.common.networking.Connection;
+import com.tearulez.dudes.common.networking.ConnectionListener;
+import com.tearulez.dudes.common.networking.DatagramLink;
+import com.tearulez.dudes.common.networking.Server;
+import com.tearulez.dudes.common.networking.SimulatedLink;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GameClientTest {
+    private static final int PORT = 8081;
+    private static final int TIMEOUT = 100;
+
+    @Test
+    public void shotsSurviveLostDatagrams() throws Exception {
+        BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+        Server server = new Server(MessageCodec.create());
+        server.serve(PORT, new ConnectionListener() {
+            @Override
+            public void connected(Connection connection) {
+                events.add(connection);
+            }
+
+            @Override
+            public void received(Connection connection, List<Object> messages) {
+                events.addAll(messages);
+            }
+
+            @Override
+            public void disconnected(Connection connection) {
+            }
+        }, DatagramLink.DIRECT);
+        // Every datagram is lost
+        SimulatedLink link = new SimulatedLink(1, 0, 0, 0);
+        try {
+            Connection connection = new Client("localhost", PORT, MessageCodec.create(), link).connect();
+            assertNotNull(events.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+
+            Messages.InputFrame move = new Messages.InputFrame();
+            move.sequence = 1;
+            move.move = new Messages.MovePlayer();
+            connection.send(move, GameClient.isReplaceable(move));
+            Messages.InputFrame shot = new Messages.InputFrame();
+            shot.sequence = 2;
+            shot.shot = new Messages.ShootAt();
+            shot.shot.x = 3;
+            connection.send(shot, GameClient.isReplaceable(shot));
+
+            Object received = events.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+            assertTrue(received instanceof Messages.InputFrame);
+            Messages.InputFrame frame = (Messages.InputFrame) received;
+            assertEquals(2, frame.sequence);
+            assertEquals(3, frame.shot.x, 0);
+            assertNull(events.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+            connection.close();
+        } finally {
+            link.close();
+            server.stop();
+        }
+    }
+}
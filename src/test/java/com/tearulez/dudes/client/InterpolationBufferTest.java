@@ -0,0 +1,89 @@
+package com.tearulez.dudes.client;
+
+import com.badlogic.gdx.math.Vector2;
+import com.tearulez.dudes.common.snapshot.Player;
+import com.tearulez.dudes.common.snapshot.Point;
+import com.tearulez.dudes.common.snapshot.StateSnapshot;
+import com.tearulez.dudes.common.snapshot.WorldState;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InterpolationBufferTest {
+    private static final int TICKS_PER_SECOND = 60;
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(1) / TICKS_PER_SECOND;
+    private static final int LOCAL_PLAYER = 0;
+    private static final int REMOTE_PLAYER = 1;
+
+    @Test
+    public void remotePlayersAreInterpolatedBehindServerTime() {
+        InterpolationBuffer buffer = new InterpolationBuffer(2 * TICK_NANOS);
+        buffer.setTickRate(TICKS_PER_SECOND);
+        add(buffer, 10, Point.create(0, 0), new Vector2(0, 0), false);
+        add(buffer, 12, Point.create(10, 0), new Vector2(0, 0), false);
+
+        StateSnapshot state = buffer.snapshot(13 * TICK_NANOS);
+        assertEquals(5, remotePlayer(state).getPosition().x, 0.01);
+        // the local player is not delayed
+        assertEquals(Point.create(12, 0), state.getPlayer().get().getPosition());
+    }
+
+    @Test
+    public void lateSnapshotsAreExtrapolated() {
+        long underruns = Metrics.metrics.counter(name(InterpolationBuffer.class, "underruns")).getCount();
+        InterpolationBuffer buffer = new InterpolationBuffer(0);
+        buffer.setTickRate(TICKS_PER_SECOND);
+        add(buffer, 10, Point.create(0, 0), new Vector2(6, 0), false);
+
+        StateSnapshot state = buffer.snapshot(16 * TICK_NANOS);
+        assertEquals(0.6, remotePlayer(state).getPosition().x, 0.01);
+        // extrapolation stops after a while
+        state = buffer.snapshot(100 * TICK_NANOS);
+        assertEquals(1.5, remotePlayer(state).getPosition().x, 0.01);
+        assertEquals(underruns + 1, Metrics.metrics.counter(name(InterpolationBuffer.class, "underruns")).getCount());
+    }
+
+    @Test
+    public void eventsAreRenderedOnce() {
+        InterpolationBuffer buffer = new InterpolationBuffer(2 * TICK_NANOS);
+        buffer.setTickRate(TICKS_PER_SECOND);
+        add(buffer, 10, Point.create(0, 0), new Vector2(0, 0), true);
+        assertTrue(buffer.snapshot(10 * TICK_NANOS).wasShot());
+        assertFalse(buffer.snapshot(11 * TICK_NANOS).wasShot());
+    }
+
+    private static void add(InterpolationBuffer buffer, long tick, Point remotePosition, Vector2 remoteVelocity,
+                            boolean wasShot) {
+        Map<Integer, Player> players = new HashMap<>();
+        players.put(LOCAL_PLAYER, Player.create(Point.create(tick, 0), new Vector2(0, 0), 0, 100));
+        players.put(REMOTE_PLAYER, Player.create(remotePosition, remoteVelocity, 0, 100));
+        WorldState world = WorldState.quantize(tick, players, Collections.emptyMap());
+        StateSnapshot snapshot = StateSnapshot.create(
+                Optional.of(world.getPlayers().get(LOCAL_PLAYER)),
+                Collections.singletonList(world.getPlayers().get(REMOTE_PLAYER)),
+                0,
+                Collections.emptyList(),
+                false,
+                false,
+                wasShot,
+                0,
+                0
+        );
+        // the snapshot arrives right at its server time
+        buffer.add(world, LOCAL_PLAYER, snapshot, tick * TICK_NANOS);
+    }
+
+    private static Player remotePlayer(StateSnapshot state) {
+        assertEquals(1, state.getOtherPlayers().size());
+        return state.getOtherPlayers().get(0);
+    }
+}
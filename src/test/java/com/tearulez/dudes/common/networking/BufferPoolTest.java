@@ -0,0 +1,35 @@
+package com.tearulez.dudes.common.networking;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class BufferPoolTest {
+
+    @Test
+    public void buffersAreRoundedUpToPowerOfTwo() {
+        BufferPool pool = new BufferPool(100 * 1024);
+        assertEquals(BufferPool.MIN_SIZE, pool.acquire(1).capacity());
+        assertEquals(BufferPool.MIN_SIZE * 2, pool.acquire(BufferPool.MIN_SIZE + 1).capacity());
+        assertEquals(128 * 1024, pool.acquire(100 * 1024 + 4).capacity());
+    }
+
+    @Test
+    public void releasedBuffersAreReused() {
+        BufferPool pool = new BufferPool(100 * 1024);
+        ByteBuffer buffer = pool.acquire(10 * 1024);
+        buffer.put((byte) 1);
+        pool.release(buffer);
+        ByteBuffer reused = pool.acquire(9 * 1024);
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void buffersAboveMaxFrameSizeAreNotGiven() {
+        new BufferPool(100 * 1024).acquire(1024 * 1024);
+    }
+}
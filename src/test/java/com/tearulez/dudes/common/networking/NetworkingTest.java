@@ -4,6 +4,8 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.Serializable;
@@ -13,17 +15,24 @@ import java.nio.channels.SocketChannel;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 public class NetworkingTest {
     private static final int PORT = 8080;
     private static final int TIMEOUT = 100;
     private static final String HOST = "localhost";
+    private static final byte BINARY_CODEC_ID = 1;
     private ExecutorService executor = null;
     private Server server = null;
 
@@ -134,6 +143,8 @@ public class NetworkingTest {
         Future<Connection> eventualConnection = executor.submit(server::accept);
         SocketChannel clientSocketChannel = SocketChannel.open();
         clientSocketChannel.connect(new InetSocketAddress(HOST, PORT));
+        clientSocketChannel.socket().setTcpNoDelay(true);
+        Handshake.offer(clientSocketChannel, new SerializationCodec(), false);
         Connection serverConnection = eventualConnection.get(TIMEOUT, TimeUnit.MILLISECONDS);
         serverConnection.send("big object");
 
@@ -154,6 +165,177 @@ public class NetworkingTest {
         assertEquals(Collections.singletonList("big object"), serverConnection.receive());
     }
 
+    @Test
+    public void frameLargerThanInitialBuffer() throws Exception {
+        Future<Connection> eventualConnection = executor.submit(server::accept);
+        Client client = new Client(HOST, PORT);
+        Connection clientConnection = client.connect();
+        Connection serverConnection = eventualConnection.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        char[] chars = new char[100 * 1024];
+        Arrays.fill(chars, 'x');
+        String bigObject = new String(chars);
+        serverConnection.send(bigObject);
+        assertEquals(Collections.singletonList(bigObject), receive(clientConnection));
+    }
+
+    @Test(expected = IOException.class)
+    public void oversizedFrameIsRejected() throws Exception {
+        server.stop();
+        server = new Server(Backpressure.DEFAULT, new BufferPool(1024));
+        server.bind(PORT);
+        Future<Connection> eventualConnection = executor.submit(server::accept);
+        SocketChannel clientSocketChannel = SocketChannel.open();
+        clientSocketChannel.connect(new InetSocketAddress(HOST, PORT));
+        clientSocketChannel.socket().setTcpNoDelay(true);
+        Handshake.offer(clientSocketChannel, new SerializationCodec(), false);
+        Connection serverConnection = eventualConnection.get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        ByteBuffer frameSize = ByteBuffer.allocate(4);
+        frameSize.putInt(2048);
+        frameSize.flip();
+        clientSocketChannel.write(frameSize);
+        receive(serverConnection);
+    }
+
+    @Test
+    public void negotiateBinaryCodec() throws Exception {
+        server.stop();
+        server = new Server(new BinaryCodec(BINARY_CODEC_ID));
+        server.bind(PORT);
+        Future<Connection> eventualConnection = executor.submit(server::accept);
+        Client client = new Client(HOST, PORT, new BinaryCodec(BINARY_CODEC_ID));
+        Connection clientConnection = client.connect();
+        Connection serverConnection = eventualConnection.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(BINARY_CODEC_ID, clientConnection.getCodec().getId());
+        assertEquals(BINARY_CODEC_ID, serverConnection.getCodec().getId());
+        clientConnection.send("test");
+        assertEquals(Collections.singletonList("test"), serverConnection.receive());
+    }
+
+    @Test
+    public void fallbackToSerializationCodec() throws Exception {
+        Future<Connection> eventualConnection = executor.submit(server::accept);
+        Client client = new Client(HOST, PORT, new BinaryCodec(BINARY_CODEC_ID));
+        Connection clientConnection = client.connect();
+        Connection serverConnection = eventualConnection.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertEquals(SerializationCodec.ID, clientConnection.getCodec().getId());
+        assertEquals(SerializationCodec.ID, serverConnection.getCodec().getId());
+        serverConnection.send(0);
+        assertEquals(Collections.singletonList(0), clientConnection.receive());
+    }
+
+    @Test
+    public void sendEncodedParts() throws Exception {
+        Future<Connection> eventualConnection = executor.submit(server::accept);
+        Client client = new Client(HOST, PORT);
+        Connection clientConnection = client.connect();
+        Connection serverConnection = eventualConnection.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        serverConnection.getCodec().encode("shared", out);
+        out.flush();
+        byte[] bytes = buffer.toByteArray();
+        BinaryCodec.Writer<byte[]> headerWriter = (header, headerOut) -> headerOut.write(header, 0, 2);
+        ByteBuffer body = ByteBuffer.wrap(bytes, 2, bytes.length - 2).slice();
+        serverConnection.sendEncoded(headerWriter, bytes, body, false);
+        serverConnection.sendEncoded(headerWriter, bytes, body, false);
+        assertEquals(Arrays.asList("shared", "shared"), clientConnection.receive());
+    }
+
+    @Test
+    public void serveConnections() throws Exception {
+        BlockingQueue<Object> events = serve(null);
+        Client client = new Client(HOST, PORT);
+        Connection clientConnection = client.connect();
+        Connection serverConnection = (Connection) events.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        clientConnection.send("ping");
+        assertEquals("ping", events.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        serverConnection.send("pong");
+        assertEquals(Collections.singletonList("pong"), receive(clientConnection));
+
+        clientConnection.close();
+        assertEquals("disconnected", events.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void replaceableMessagesOverDatagrams() throws Exception {
+        BlockingQueue<Object> events = serve(DatagramLink.DIRECT);
+        Client client = new Client(HOST, PORT, new SerializationCodec(), DatagramLink.DIRECT);
+        Connection clientConnection = client.connect();
+        Connection serverConnection = (Connection) events.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull(clientConnection.getDatagramPath());
+        assertNotNull(serverConnection.getDatagramPath());
+
+        clientConnection.send("ping", true);
+        assertEquals("ping", events.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        // The server knows where to send datagrams once it has received one
+        serverConnection.send("pong", true);
+        assertEquals(Collections.singletonList("pong"), receive(clientConnection));
+    }
+
+    @Test
+    public void lostDatagramsDoNotAffectReliableMessages() throws Exception {
+        BlockingQueue<Object> events = serve(DatagramLink.DIRECT);
+        SimulatedLink link = new SimulatedLink(1, 0, 0, 0);
+        Client client = new Client(HOST, PORT, new SerializationCodec(), link);
+        Connection clientConnection = client.connect();
+        events.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+
+        clientConnection.send("lost", true);
+        clientConnection.send("reliable");
+        assertEquals("reliable", events.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertNull(events.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        link.close();
+    }
+
+    @Test
+    public void staleDatagramsAreDropped() throws Exception {
+        DatagramPath datagramPath = new DatagramPath(null, DatagramLink.DIRECT, 1, null);
+        assertTrue(datagramPath.accept(5));
+        assertFalse(datagramPath.accept(5));
+        assertFalse(datagramPath.accept(4));
+        assertTrue(datagramPath.accept(6));
+        // Sequence numbers wrap around
+        assertTrue(datagramPath.accept(Integer.MAX_VALUE));
+        assertTrue(datagramPath.accept(Integer.MIN_VALUE));
+    }
+
+    private BlockingQueue<Object> serve(DatagramLink datagramLink) throws IOException {
+        server.stop();
+        server = new Server();
+        BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+        server.serve(PORT, new ConnectionListener() {
+            @Override
+            public void connected(Connection connection) {
+                events.add(connection);
+            }
+
+            @Override
+            public void received(Connection connection, List<Object> messages) {
+                events.addAll(messages);
+            }
+
+            @Override
+            public void disconnected(Connection connection) {
+                events.add("disconnected");
+            }
+        }, datagramLink);
+        return events;
+    }
+
+    private static List<Object> receive(Connection connection) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        List<Object> messages = connection.receive();
+        while (messages.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+            messages = connection.receive();
+        }
+        return messages;
+    }
+
     public static class CustomMessage implements Serializable {
         float x;
         float y;
@@ -0,0 +1,90 @@
+package com.tearulez.dudes.common.networking;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class OutboundQueueTest {
+    private static final int FRAME_SIZE = 100;
+
+    @Test
+    public void dropStaleReplaceableFrames() throws Exception {
+        OutboundQueue queue = new OutboundQueue(
+                new Backpressure(250, 100, Backpressure.Policy.DROP_STALE), BufferPool.DEFAULT
+        );
+        queue.add(frame(), false);
+        queue.add(frame(), true);
+        queue.add(frame(), true);
+        assertEquals(3 * FRAME_SIZE, queue.getQueuedBytes());
+
+        // Congested, the new snapshot replaces the queued ones but the reliable frame stays
+        queue.add(frame(), true);
+        assertEquals(2 * FRAME_SIZE, queue.getQueuedBytes());
+        assertEquals(2, queue.getDroppedFrames());
+
+        queue.add(frame(), false);
+        assertEquals(3 * FRAME_SIZE, queue.getQueuedBytes());
+        assertEquals(2, queue.getDroppedFrames());
+    }
+
+    @Test
+    public void droppedFramesGiveTheirBuffersBack() throws Exception {
+        CountingPool pool = new CountingPool();
+        OutboundQueue queue = new OutboundQueue(new Backpressure(250, 100, Backpressure.Policy.DROP_STALE), pool);
+        queue.add(frame(), false);
+        queue.add(frame(), true);
+        queue.add(frame(), true);
+        assertEquals(3, pool.held);
+
+        queue.add(frame(), true);
+        assertEquals(2, pool.held);
+    }
+
+    @Test
+    public void framesLargerThanThePoolAreQueued() throws Exception {
+        CountingPool pool = new CountingPool();
+        OutboundQueue queue = new OutboundQueue(
+                new Backpressure(64 * 1024, 32 * 1024, Backpressure.Policy.DROP_STALE), pool
+        );
+        queue.add(new ByteBuffer[]{ByteBuffer.allocate(2 * BufferPool.MIN_SIZE)}, false);
+        assertEquals(2 * BufferPool.MIN_SIZE, queue.getQueuedBytes());
+        assertEquals(0, pool.held);
+    }
+
+    @Test(expected = SlowConnectionException.class)
+    public void disconnectOnOverflow() throws Exception {
+        OutboundQueue queue = new OutboundQueue(
+                new Backpressure(250, 100, Backpressure.Policy.DISCONNECT), BufferPool.DEFAULT
+        );
+        queue.add(frame(), true);
+        queue.add(frame(), true);
+        queue.add(frame(), true);
+    }
+
+    private static ByteBuffer[] frame() {
+        return new ByteBuffer[]{ByteBuffer.allocate(FRAME_SIZE / 2), ByteBuffer.allocate(FRAME_SIZE / 2)};
+    }
+
+    // Counts the buffers taken and not given back, its buffers fit frames of up to MIN_SIZE bytes
+    private static class CountingPool extends BufferPool {
+        int held = 0;
+
+        CountingPool() {
+            super(BufferPool.MIN_SIZE - Integer.BYTES);
+        }
+
+        @Override
+        synchronized ByteBuffer acquire(int capacity) {
+            held += 1;
+            return super.acquire(capacity);
+        }
+
+        @Override
+        synchronized void release(ByteBuffer buffer) {
+            held -= 1;
+            super.release(buffer);
+        }
+    }
+}
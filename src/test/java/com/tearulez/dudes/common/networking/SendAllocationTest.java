@@ -0,0 +1,150 @@
+package com.tearulez.dudes.common.networking;
+
+import com.tearulez.dudes.common.MessageCodec;
+import com.tearulez.dudes.common.Messages;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Sends over a served connection in steady state do not allocate on the sending thread.
+ */
+public class SendAllocationTest {
+    private static final int PORT = 8082;
+    private static final int TIMEOUT = 1000;
+    private static final int WARMUP_SENDS = 20_000;
+    private static final int MEASURED_SENDS = 20_000;
+    // Sends between waits for the queue to drain, so the queue stays within the pool's free buffers
+    private static final int BATCH = 16;
+    // Slack for the measurement itself, far less than a byte per send
+    private static final long ALLOWED_BYTES = 1024;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private Server server;
+    private Connection clientConnection;
+    private Thread drain;
+
+    @Before
+    public void before() throws Exception {
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @After
+    public void after() throws Exception {
+        if (drain != null) {
+            drain.interrupt();
+            drain.join();
+        }
+        if (clientConnection != null) {
+            clientConnection.close();
+        }
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void sendDoesNotAllocate() throws Exception {
+        Connection connection = connect();
+        Messages.SnapshotAck ack = new Messages.SnapshotAck();
+        Runnable send = () -> {
+            try {
+                ack.tick += 1;
+                connection.send(ack);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        sends(connection, send, WARMUP_SENDS);
+        long allocated = allocatedBytes(connection, send);
+        assertTrue("send allocated " + allocated + " bytes", allocated <= ALLOWED_BYTES);
+    }
+
+    @Test
+    public void sendEncodedDoesNotAllocate() throws Exception {
+        Connection connection = connect();
+        Messages.UpdateModel header = new Messages.UpdateModel();
+        ByteBuffer body = ByteBuffer.allocateDirect(512);
+        body.put(new byte[body.capacity()]).flip();
+        Runnable send = () -> {
+            try {
+                header.lastInputSequence += 1;
+                connection.sendEncoded(MessageCodec.UPDATE_MODEL_HEADER, header, body, false);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        };
+        sends(connection, send, WARMUP_SENDS);
+        long allocated = allocatedBytes(connection, send);
+        assertTrue("sendEncoded allocated " + allocated + " bytes", allocated <= ALLOWED_BYTES);
+        assertEquals(0, body.position());
+    }
+
+    private long allocatedBytes(Connection connection, Runnable send) {
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        sends(connection, send, MEASURED_SENDS);
+        return threads.getThreadAllocatedBytes(threadId) - before;
+    }
+
+    private static void sends(Connection connection, Runnable send, int count) {
+        for (int i = 0; i < count; i++) {
+            send.run();
+            if (i % BATCH == BATCH - 1) {
+                while (connection.getQueuedBytes() > 0) {
+                    Thread.yield();
+                }
+            }
+        }
+    }
+
+    // Serves a connection and drains it from the client side, returns the server's end
+    private Connection connect() throws Exception {
+        BlockingQueue<Connection> connections = new LinkedBlockingQueue<>();
+        server = new Server(MessageCodec.create());
+        server.serve(PORT, new ConnectionListener() {
+            @Override
+            public void connected(Connection connection) {
+                connections.add(connection);
+            }
+
+            @Override
+            public void received(Connection connection, List<Object> messages) {
+            }
+
+            @Override
+            public void disconnected(Connection connection) {
+            }
+        });
+        clientConnection = new Client("localhost", PORT, MessageCodec.create()).connect();
+        Connection connection = connections.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        drain = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    if (clientConnection.receive().isEmpty()) {
+                        Thread.sleep(1);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // stopped by the test
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }, "drain");
+        drain.start();
+        return connection;
+    }
+}
@@ -0,0 +1,82 @@
+package com.tearulez.dudes.common.snapshot;
+
+import com.badlogic.gdx.math.Vector2;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SnapshotDeltaTest {
+
+    @Test
+    public void fullDeltaContainsAllEntities() {
+        WorldState world = WorldState.quantize(1, players(Point.create(0, 0), Point.create(5, 5)), bullets(Point.create(1, 1)));
+        SnapshotDelta delta = SnapshotDelta.diff(Optional.empty(), world).build();
+        assertFalse(delta.hasBaseline());
+        assertEquals(2, delta.getChangedPlayers().size());
+        assertEquals(1, delta.getChangedBullets().size());
+        assertWorldEquals(world, delta.apply(Optional.empty()));
+    }
+
+    @Test
+    public void deltaContainsOnlyChangedAndRemovedEntities() {
+        WorldState baseline = WorldState.quantize(1, players(Point.create(0, 0), Point.create(5, 5)), bullets(Point.create(1, 1)));
+        Map<Integer, Player> players = new HashMap<>(baseline.getPlayers());
+        players.put(1, Player.create(Point.create(5.01f, 5), new Vector2(0.5f, 0), 0, 90));
+        players.remove(0);
+        WorldState current = WorldState.quantize(2, players, Collections.emptyMap());
+
+        SnapshotDelta delta = SnapshotDelta.diff(Optional.of(baseline), current).build();
+        assertTrue(delta.hasBaseline());
+        assertEquals(Collections.singleton(1), delta.getChangedPlayers().keySet());
+        assertEquals(Collections.singletonList(0), delta.getRemovedPlayers());
+        assertEquals(Collections.singletonList(0), delta.getRemovedBullets());
+        assertWorldEquals(current, delta.apply(Optional.of(baseline)));
+    }
+
+    @Test
+    public void unchangedWorldProducesEmptyDelta() {
+        WorldState baseline = WorldState.quantize(1, players(Point.create(0.123f, 4.56f)), bullets(Point.create(1, 1)));
+        WorldState current = WorldState.quantize(2, baseline.getPlayers(), baseline.getBullets());
+        SnapshotDelta delta = SnapshotDelta.diff(Optional.of(baseline), current).build();
+        assertTrue(delta.getChangedPlayers().isEmpty());
+        assertTrue(delta.getChangedBullets().isEmpty());
+    }
+
+    @Test
+    public void ownPlayerIsSeparatedFromOtherPlayers() {
+        WorldState world = WorldState.quantize(1, players(Point.create(0, 0), Point.create(5, 5)), bullets());
+        SnapshotDelta delta = SnapshotDelta.diff(Optional.empty(), world).build();
+        StateSnapshot snapshot = delta.toStateSnapshot(delta.apply(Optional.empty()), 1);
+        assertEquals(Point.create(5, 5), snapshot.getPlayer().get().getPosition());
+        assertEquals(1, snapshot.getOtherPlayers().size());
+    }
+
+    private static Map<Integer, Player> players(Point... positions) {
+        Map<Integer, Player> players = new HashMap<>();
+        for (int i = 0; i < positions.length; i++) {
+            players.put(i, Player.create(positions[i], new Vector2(0, 0), 0, Player.MAX_HEALTH));
+        }
+        return players;
+    }
+
+    private static Map<Integer, Point> bullets(Point... positions) {
+        Map<Integer, Point> bullets = new HashMap<>();
+        for (int i = 0; i < positions.length; i++) {
+            bullets.put(i, positions[i]);
+        }
+        return bullets;
+    }
+
+    private static void assertWorldEquals(WorldState expected, WorldState actual) {
+        assertEquals(expected.getTick(), actual.getTick());
+        assertEquals(expected.getPlayers(), actual.getPlayers());
+        assertEquals(expected.getBullets(), actual.getBullets());
+    }
+}
@@ -0,0 +1,63 @@
+package com.tearulez.dudes.server;
+
+import org.junit.Test;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ConfigServerTest {
+    @Test
+    public void unknownSlowClientPolicyIsRejected() throws IOException {
+        ConfigServer configServer = new ConfigServer();
+        String settings = new String(Files.readAllBytes(Paths.get("server.properties")), StandardCharsets.UTF_8);
+        try {
+            configServer.saveConfig(new StringReader(settings + "\nslowClientPolicy=WAIT"));
+            fail("config should be invalid");
+        } catch (IllegalArgumentException e) {
+            assertEquals("slowClientPolicy should be one of the policies", e.getMessage());
+        }
+        assertNull(configServer.getGameModelConfig());
+    }
+
+    @Test
+    public void startupSettingsCannotChange() throws IOException {
+        ConfigServer configServer = loadedConfigServer();
+        assertRejected(
+                configServer,
+                "ticksPerSecond=30\nbots=5\nrooms=8",
+                "ticksPerSecond is read when the server starts and cannot be changed while it runs\n"
+                        + "rooms is read when the server starts and cannot be changed while it runs"
+        );
+        configServer.saveConfig(new StringReader("bulletSpeed=30\nticksPerSecond=60"));
+        assertEquals(30, configServer.getGameModelConfig().getBulletSpeed(), 0);
+    }
+
+    private static ConfigServer loadedConfigServer() throws IOException {
+        ConfigServer configServer = new ConfigServer();
+        try (Reader reader = new FileReader("server.properties")) {
+            configServer.saveConfig(reader);
+        }
+        return configServer;
+    }
+
+    private static void assertRejected(ConfigServer configServer, String settings, String error) throws IOException {
+        Object current = configServer.getGameModelConfig();
+        try {
+            configServer.saveConfig(new StringReader(settings));
+            fail("config should be invalid");
+        } catch (IllegalArgumentException e) {
+            assertEquals(error, e.getMessage());
+        }
+        assertSame(current, configServer.getGameModelConfig());
+    }
+}
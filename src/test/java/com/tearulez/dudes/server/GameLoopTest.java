@@ -0,0 +1,62 @@
+package com.tearulez.dudes.server;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.junit.Assert.assertTrue;
+
+public class GameLoopTest {
+
+    @Test
+    public void ticksAtTheGivenRate() throws Exception {
+        AtomicInteger ticks = new AtomicInteger();
+        GameLoop loop = new GameLoop("rate-test", 100, ticks::incrementAndGet);
+        loop.start();
+        Thread.sleep(500);
+        loop.stop();
+        assertTrue("ticks: " + ticks.get(), ticks.get() >= 40 && ticks.get() <= 60);
+    }
+
+    @Test
+    public void longTickIsCaughtUpWithinBound() throws Exception {
+        AtomicInteger ticks = new AtomicInteger();
+        GameLoop loop = new GameLoop("catch-up-test", 100, () -> {
+            if (ticks.incrementAndGet() == 1) {
+                sleep(200);
+            }
+        });
+        loop.start();
+        Thread.sleep(500);
+        loop.stop();
+        long dropped = Metrics.metrics.counter(name(GameLoop.class, "catch-up-test", "droppedTicks")).getCount();
+        assertTrue("dropped: " + dropped, dropped >= 10);
+        // the dropped ticks are not run in a burst afterwards
+        assertTrue("ticks: " + ticks.get(), ticks.get() <= 40);
+    }
+
+    @Test
+    public void failedTickDoesNotStopTheLoop() throws Exception {
+        AtomicInteger ticks = new AtomicInteger();
+        GameLoop loop = new GameLoop("failure-test", 100, () -> {
+            if (ticks.incrementAndGet() == 1) {
+                throw new IllegalStateException("first tick fails");
+            }
+        });
+        loop.start();
+        Thread.sleep(200);
+        loop.stop();
+        long failed = Metrics.metrics.counter(name(GameLoop.class, "failure-test", "failedTicks")).getCount();
+        assertTrue("failed: " + failed, failed == 1);
+        assertTrue("ticks: " + ticks.get(), ticks.get() >= 10);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
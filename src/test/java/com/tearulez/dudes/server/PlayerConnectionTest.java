@@ -0,0 +1,113 @@
+package com.tearulez.dudes.server;
+
+import com.tearulez.dudes.common.Messages;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PlayerConnectionTest {
+    private static final int TTL = 3;
+
+    @Test
+    public void oneFrameIsTakenPerTick() {
+        InputMailbox mailbox = new InputMailbox();
+        PlayerConnection connection = new PlayerConnection(TTL, 0, new SendRate(60, 20), mailbox);
+        Messages.InputFrame first = frame(1, move(1));
+        first.rotation = new Messages.RotatePlayer();
+        first.reload = true;
+        mailbox.accept(first);
+        mailbox.accept(frame(2, move(2)));
+
+        connection.takeInputs();
+        assertEquals(1, connection.lastInputSequence());
+        assertEquals(1, connection.moveAction().get().dx, 0);
+        assertTrue(connection.rotationAction().isPresent());
+        assertTrue(connection.reloadAction());
+
+        connection.takeInputs();
+        assertEquals(2, connection.lastInputSequence());
+        assertEquals(2, connection.moveAction().get().dx, 0);
+        assertFalse(connection.rotationAction().isPresent());
+        assertFalse(connection.reloadAction());
+    }
+
+    @Test
+    public void fullQueueDropsTheOldestMovementButKeepsItsShot() {
+        InputMailbox mailbox = new InputMailbox();
+        PlayerConnection connection = new PlayerConnection(TTL, 0, new SendRate(60, 20), mailbox);
+        Messages.InputFrame shot = frame(1, move(1));
+        shot.shot = new Messages.ShootAt();
+        mailbox.accept(shot);
+        for (int sequence = 2; sequence <= InputMailbox.MAX_QUEUED_FRAMES + 1; sequence++) {
+            mailbox.accept(frame(sequence, move(sequence)));
+        }
+
+        connection.takeInputs();
+        assertEquals(2, connection.lastInputSequence());
+        assertEquals(2, connection.moveAction().get().dx, 0);
+        assertTrue(connection.shootAction().isPresent());
+    }
+
+    @Test
+    public void moveIsRepeatedUntilItsTTLExpires() {
+        InputMailbox mailbox = new InputMailbox();
+        PlayerConnection connection = new PlayerConnection(TTL, 0, new SendRate(60, 20), mailbox);
+        mailbox.accept(frame(1, move(1)));
+        for (int i = 0; i < TTL; i++) {
+            connection.takeInputs();
+            assertTrue(connection.moveAction().isPresent());
+        }
+        connection.takeInputs();
+        assertFalse(connection.moveAction().isPresent());
+    }
+
+    @Test
+    public void stopAndStaleFramesAreHandled() {
+        InputMailbox mailbox = new InputMailbox();
+        PlayerConnection connection = new PlayerConnection(TTL, 0, new SendRate(60, 20), mailbox);
+        mailbox.accept(frame(5, move(1)));
+        mailbox.accept(frame(6, null));
+        // reordered frame
+        mailbox.accept(frame(4, move(1)));
+
+        connection.takeInputs();
+        assertEquals(5, connection.lastInputSequence());
+        assertTrue(connection.moveAction().isPresent());
+        connection.takeInputs();
+        assertEquals(6, connection.lastInputSequence());
+        assertFalse(connection.moveAction().isPresent());
+    }
+
+    @Test
+    public void shotsOfStaleFramesAreTaken() {
+        InputMailbox mailbox = new InputMailbox();
+        PlayerConnection connection = new PlayerConnection(TTL, 0, new SendRate(60, 20), mailbox);
+        mailbox.accept(frame(6, move(1)));
+        // sent reliably, overtaken by a newer frame sent as a datagram
+        Messages.InputFrame shot = frame(5, move(2));
+        shot.shot = new Messages.ShootAt();
+        shot.reload = true;
+        mailbox.accept(shot);
+
+        connection.takeInputs();
+        assertEquals(6, connection.lastInputSequence());
+        assertEquals(1, connection.moveAction().get().dx, 0);
+        assertTrue(connection.shootAction().isPresent());
+        assertTrue(connection.reloadAction());
+    }
+
+    private static Messages.InputFrame frame(int sequence, Messages.MovePlayer move) {
+        Messages.InputFrame frame = new Messages.InputFrame();
+        frame.sequence = sequence;
+        frame.move = move;
+        return frame;
+    }
+
+    private static Messages.MovePlayer move(float dx) {
+        Messages.MovePlayer move = new Messages.MovePlayer();
+        move.dx = dx;
+        return move;
+    }
+}
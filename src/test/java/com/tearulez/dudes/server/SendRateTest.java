@@ -0,0 +1,66 @@
+package com.tearulez.dudes.server;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SendRateTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void snapshotsAreSentAtTheRateInterval() {
+        SendRate sendRate = new SendRate(60, 20);
+        assertTrue(sendRate.isDue(0));
+        sendRate.snapshotSent(0);
+        assertFalse(sendRate.isDue(2));
+        assertTrue(sendRate.isDue(3));
+    }
+
+    @Test
+    public void rateDropsToDeliveredBandwidthWhenBytesPileUp() {
+        SendRate sendRate = new SendRate(60, 20);
+        sendRate.update(0, 0, 0, 5, 30);
+        // 20 snapshots of 1000 bytes, half of them still queued
+        for (int i = 0; i < 20; i++) {
+            sendRate.snapshotSent(i * 3);
+            sendRate.snapshotAcked();
+        }
+        sendRate.update(SECOND, 20000, 10000, 5, 30);
+        assertEquals(8, sendRate.getRate(), 0.01);
+    }
+
+    @Test
+    public void rateDropsWhenSnapshotsAreNotAcknowledged() {
+        SendRate sendRate = new SendRate(60, 20);
+        sendRate.update(0, 0, 0, 5, 30);
+        for (int i = 0; i < 20; i++) {
+            sendRate.snapshotSent(i * 3);
+        }
+        for (int i = 0; i < 10; i++) {
+            sendRate.snapshotAcked();
+        }
+        sendRate.update(SECOND, 20000, 0, 5, 30);
+        assertEquals(8, sendRate.getRate(), 0.01);
+    }
+
+    @Test
+    public void rateGrowsBackWithinBounds() {
+        SendRate sendRate = new SendRate(60, 29);
+        sendRate.update(0, 0, 0, 5, 30);
+        for (int i = 0; i < 29; i++) {
+            sendRate.snapshotSent(i * 2);
+            sendRate.snapshotAcked();
+        }
+        sendRate.update(SECOND, 29000, 0, 5, 30);
+        assertEquals(30, sendRate.getRate(), 0.01);
+        // a lower bound from the config applies at once
+        sendRate.update(SECOND + 1, 29000, 0, 5, 10);
+        assertEquals(30, sendRate.getRate(), 0.01);
+        sendRate.update(2 * SECOND, 29000, 0, 5, 10);
+        assertEquals(10, sendRate.getRate(), 0.01);
+    }
+}
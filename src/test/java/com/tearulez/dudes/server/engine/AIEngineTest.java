@@ -0,0 +1,102 @@
+package com.tearulez.dudes.server.engine;
+
+import com.tearulez.dudes.common.Messages;
+import com.tearulez.dudes.common.snapshot.Point;
+import org.junit.Test;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AIEngineTest {
+    // Enough for the decisions to run in parallel chunks
+    private static final int BOTS = 40;
+    private static final int TICKS = 120;
+
+    @Test
+    public void botsWithTheSameSeedDecideTheSame() throws Exception {
+        GameModelConfig config = new GameModelConfig(serverProperties());
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            List<String> first = pool.submit(() -> play(config, 7)).get();
+            List<String> second = pool.submit(() -> play(config, 7)).get();
+            assertEquals(first, second);
+            assertTrue(first.stream().anyMatch(step -> step.contains("move")));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void botsAreRegistered() throws IOException {
+        GameModel gameModel = GameModel.create(Collections.emptyList(), new GameModelConfig(serverProperties()));
+        AIEngine aiEngine = new AIEngine(3, 0, new Rect(-50, 50, -50, 50), gameModel, 24);
+        assertEquals(3, aiEngine.getBotCount());
+        assertTrue(aiEngine.isBot(-1));
+        assertTrue(aiEngine.isBot(-3));
+        assertFalse(aiEngine.isBot(-4));
+        assertFalse(aiEngine.isBot(0));
+    }
+
+    // Runs a match of bots only and describes the actions of every tick
+    private static List<String> play(GameModelConfig config, long seed) {
+        GameModel gameModel = GameModel.create(Collections.emptyList(), config);
+        AIEngine aiEngine = new AIEngine(BOTS, seed, new Rect(-50, 50, -50, 50), gameModel, config.getBulletSpeed());
+        List<String> steps = new ArrayList<>();
+        for (int tick = 0; tick < TICKS; tick++) {
+            gameModel.nextStep(
+                    new HashMap<>(aiEngine.getSpawnRequests()),
+                    Collections.emptyList(),
+                    new HashMap<>(aiEngine.getMoveActions()),
+                    new HashMap<>(aiEngine.getRotationActions()),
+                    new HashMap<>(aiEngine.getShootActions()),
+                    new HashSet<>(aiEngine.getReloadingPlayers())
+            );
+            aiEngine.startNextStep().join();
+            steps.add(describe(aiEngine));
+        }
+        return steps;
+    }
+
+    private static String describe(AIEngine aiEngine) {
+        StringBuilder description = new StringBuilder();
+        for (Map.Entry<Integer, Point> spawn : aiEngine.getSpawnRequests().entrySet()) {
+            description.append("spawn ").append(spawn.getKey())
+                    .append(' ').append(spawn.getValue().x).append(' ').append(spawn.getValue().y).append('\n');
+        }
+        for (Map.Entry<Integer, Messages.MovePlayer> move : aiEngine.getMoveActions().entrySet()) {
+            description.append("move ").append(move.getKey())
+                    .append(' ').append(move.getValue().dx).append(' ').append(move.getValue().dy).append('\n');
+        }
+        for (Map.Entry<Integer, Messages.ShootAt> shot : aiEngine.getShootActions().entrySet()) {
+            description.append("shoot ").append(shot.getKey())
+                    .append(' ').append(shot.getValue().x).append(' ').append(shot.getValue().y).append('\n');
+        }
+        description.append("reload ").append(aiEngine.getReloadingPlayers());
+        return description.toString();
+    }
+
+    private static Map<String, String> serverProperties() throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = new FileReader("server.properties")) {
+            properties.load(reader);
+        }
+        Map<String, String> configData = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            configData.put(name, properties.getProperty(name));
+        }
+        return configData;
+    }
+}
@@ -0,0 +1,69 @@
+package com.tearulez.dudes.server.engine;
+
+import org.junit.Test;
+
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class GameModelConfigTest {
+    @Test
+    public void serverPropertiesAreValid() throws IOException {
+        GameModelConfig config = new GameModelConfig(serverProperties());
+        assertEquals(60, config.getTicksPerSecond());
+        assertEquals(24, config.getBulletSpeed(), 0);
+    }
+
+    @Test
+    public void allInvalidSettingsAreReported() throws IOException {
+        Map<String, String> configData = serverProperties();
+        configData.put("bulletSpeed", "fast");
+        configData.remove("magazineSize");
+        configData.put("minSnapshotsPerSecond", "40");
+        configData.put("datagrams", "yes");
+        try {
+            new GameModelConfig(configData);
+            fail("config should be invalid");
+        } catch (IllegalArgumentException e) {
+            String message = e.getMessage();
+            assertTrue(message, message.contains("bulletSpeed"));
+            assertTrue(message, message.contains("magazineSize"));
+            assertTrue(message, message.contains("snapshotsPerSecond"));
+            assertTrue(message, message.contains("datagrams"));
+            assertEquals(message, 4, message.split("\n").length);
+        }
+    }
+
+    @Test
+    public void negativeInterestRadiusIsRejected() throws IOException {
+        Map<String, String> configData = serverProperties();
+        configData.put("interestRadius", "-1");
+        try {
+            new GameModelConfig(configData);
+            fail("config should be invalid");
+        } catch (IllegalArgumentException e) {
+            assertEquals("interestRadius should not be negative", e.getMessage());
+        }
+        configData.put("interestRadius", "0");
+        assertEquals(0, new GameModelConfig(configData).getInterestRadius(), 0);
+    }
+
+    private static Map<String, String> serverProperties() throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = new FileReader("server.properties")) {
+            properties.load(reader);
+        }
+        Map<String, String> configData = new HashMap<>();
+        for (String name : properties.stringPropertyNames()) {
+            configData.put(name, properties.getProperty(name));
+        }
+        return configData;
+    }
+}
@@ -0,0 +1,80 @@
+package com.tearulez.dudes.server.engine;
+
+import com.tearulez.dudes.common.snapshot.Point;
+import com.tearulez.dudes.common.snapshot.Wall;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class NeighboursTest {
+    private static final float RADIUS = 20;
+
+    @Test
+    public void neighboursBehindAWallAreNotVisible() {
+        WallIndex walls = WallIndex.create(Collections.singletonList(Wall.create(Point.create(5, 0), Arrays.asList(
+                Point.create(-1, -1), Point.create(1, -1), Point.create(1, 1), Point.create(-1, 1)
+        ))));
+        int[] ids = {7, 8, 9};
+        float[] xs = {0, 10, 0};
+        float[] ys = {0, 0, 50};
+        Neighbours neighbours = update(ids, xs, ys, walls);
+
+        int row = neighbours.rowOf(7);
+        assertEquals(1, neighbours.end(row) - neighbours.start(row));
+        int index = neighbours.start(row);
+        assertEquals(8, neighbours.getId(index));
+        assertEquals(10, neighbours.getDistance(index), 1e-6);
+        assertFalse(neighbours.isVisible(index));
+        row = neighbours.rowOf(9);
+        assertEquals(neighbours.start(row), neighbours.end(row));
+        assertEquals(-1, neighbours.rowOf(10));
+    }
+
+    @Test
+    public void parallelRowsMatchCheckingEveryPair() {
+        Random random = new Random(1);
+        int count = 300;
+        int[] ids = new int[count];
+        float[] xs = new float[count];
+        float[] ys = new float[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = i * 3 - 100;
+            xs[i] = random.nextFloat() * 200;
+            ys[i] = random.nextFloat() * 200;
+        }
+        WallIndex walls = WallIndex.create(Collections.emptyList());
+        Neighbours neighbours = update(ids, xs, ys, walls);
+        for (int i = 0; i < count; i++) {
+            int row = neighbours.rowOf(ids[i]);
+            int expected = 0;
+            for (int j = 0; j < count; j++) {
+                float dx = xs[j] - xs[i];
+                float dy = ys[j] - ys[i];
+                if (j != i && dx * dx + dy * dy < RADIUS * RADIUS) {
+                    expected += 1;
+                }
+            }
+            assertEquals(expected, neighbours.end(row) - neighbours.start(row));
+            for (int index = neighbours.start(row); index < neighbours.end(row); index++) {
+                assertTrue(neighbours.getDistance(index) < RADIUS);
+                assertTrue(neighbours.isVisible(index));
+            }
+        }
+    }
+
+    private static Neighbours update(int[] ids, float[] xs, float[] ys, WallIndex walls) {
+        SpatialGrid grid = new SpatialGrid(16);
+        for (int slot = 0; slot < ids.length; slot++) {
+            grid.add(slot, xs[slot], ys[slot]);
+        }
+        Neighbours neighbours = new Neighbours();
+        neighbours.update(ids, xs, ys, ids.length, grid, walls, RADIUS);
+        return neighbours;
+    }
+}
@@ -0,0 +1,56 @@
+package com.tearulez.dudes.server.engine;
+
+import com.badlogic.gdx.math.Vector2;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class PlayerHistoryTest {
+
+    @Test
+    public void segmentIsCheckedAgainstPastPositions() {
+        PlayerHistory history = new PlayerHistory(4);
+        history.startTick(1);
+        history.add(7, 10, 0);
+        history.startTick(2);
+        history.add(7, 10, 5);
+
+        Vector2 from = new Vector2(8, 0);
+        Vector2 to = new Vector2(12, 0);
+        assertEquals(7, history.firstHit(1, 0, from, to, 1));
+        assertEquals(-1, history.firstHit(2, 0, from, to, 1));
+    }
+
+    @Test
+    public void nearestPlayerAlongSegmentIsHitAndShooterIsSkipped() {
+        PlayerHistory history = new PlayerHistory(4);
+        history.startTick(1);
+        history.add(1, 0, 0);
+        history.add(2, 6, 0);
+        history.add(3, 3, 0.5f);
+        assertEquals(3, history.firstHit(1, 1, new Vector2(0, 0), new Vector2(10, 0), 1));
+    }
+
+    @Test
+    public void ticksOutsideOfHistoryAreNotChecked() {
+        PlayerHistory history = new PlayerHistory(2);
+        for (int tick = 1; tick <= 3; tick++) {
+            history.startTick(tick);
+            history.add(7, 0, 0);
+        }
+        assertEquals(-1, history.firstHit(1, 0, new Vector2(-1, 0), new Vector2(1, 0), 1));
+        assertEquals(7, history.firstHit(2, 0, new Vector2(-1, 0), new Vector2(1, 0), 1));
+    }
+
+    @Test
+    public void rowsGrowWithPlayerCount() {
+        PlayerHistory history = new PlayerHistory(2);
+        history.startTick(1);
+        for (int id = 0; id < 100; id++) {
+            history.add(id, id * 10, 0);
+        }
+        history.startTick(2);
+        history.add(0, 0, 0);
+        assertEquals(99, history.firstHit(1, -1, new Vector2(989, 5), new Vector2(991, -5), 1));
+    }
+}
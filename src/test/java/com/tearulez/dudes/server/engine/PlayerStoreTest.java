@@ -0,0 +1,43 @@
+package com.tearulez.dudes.server.engine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PlayerStoreTest {
+    @Test
+    public void removalMovesTheLastPlayerIntoTheFreedSlot() {
+        PlayerStore store = new PlayerStore();
+        store.add(10, null, 100, 30);
+        store.add(20, null, 90, 30);
+        int slot = store.add(30, null, 80, 30);
+        store.setAngle(slot, 1.5f);
+
+        store.remove(10);
+        assertEquals(2, store.size());
+        assertFalse(store.contains(10));
+        assertEquals(-1, store.slotOf(10));
+        int moved = store.slotOf(30);
+        assertEquals(0, moved);
+        assertEquals(30, store.getId(moved));
+        assertEquals(80, store.getHealth(moved));
+        assertEquals(1.5f, store.getAngle(moved), 0);
+        assertEquals(90, store.getHealth(store.slotOf(20)));
+    }
+
+    @Test
+    public void storeGrowsBeyondItsInitialCapacity() {
+        PlayerStore store = new PlayerStore();
+        for (int id = 0; id < 100; id++) {
+            store.add(id, null, id, 30);
+        }
+        assertEquals(100, store.size());
+        for (int id = 0; id < 100; id++) {
+            assertTrue(store.contains(id));
+            assertEquals(id, store.getHealth(store.slotOf(id)));
+            assertEquals(PlayerStore.NEVER, store.getLastShotTick(store.slotOf(id)));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.tearulez.dudes.server.engine;
+
+import com.badlogic.gdx.utils.IntArray;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+public class SpatialGridTest {
+
+    @Test
+    public void queryReturnsPointsWithinRadius() {
+        SpatialGrid grid = new SpatialGrid(4);
+        grid.add(1, 0, 0);
+        grid.add(2, 3, 3);
+        grid.add(3, -5, 0);
+        grid.add(4, 20, 20);
+        assertEquals(new HashSet<>(Arrays.asList(1, 2, 3)), query(grid, 0, 0, 6));
+        assertEquals(new HashSet<>(Arrays.asList(1, 2)), query(grid, 1, 1, 3));
+    }
+
+    @Test
+    public void clearRemovesAllPoints() {
+        SpatialGrid grid = new SpatialGrid(4);
+        grid.add(1, 0, 0);
+        grid.clear();
+        grid.add(2, 1, 1);
+        assertEquals(new HashSet<>(Arrays.asList(2)), query(grid, 0, 0, 10));
+    }
+
+    @Test
+    public void randomTest() {
+        Random rnd = new Random(0);
+        float[] xs = new float[200];
+        float[] ys = new float[200];
+        SpatialGrid grid = new SpatialGrid(7);
+        for (int i = 0; i < xs.length; i++) {
+            xs[i] = rnd.nextFloat() * 200 - 100;
+            ys[i] = rnd.nextFloat() * 200 - 100;
+            grid.add(i, xs[i], ys[i]);
+        }
+        for (int q = 0; q < 100; q++) {
+            float x = rnd.nextFloat() * 200 - 100;
+            float y = rnd.nextFloat() * 200 - 100;
+            float radius = rnd.nextFloat() * 40;
+            Set<Integer> expected = new HashSet<>();
+            for (int i = 0; i < xs.length; i++) {
+                float dx = xs[i] - x;
+                float dy = ys[i] - y;
+                if (dx * dx + dy * dy < radius * radius) {
+                    expected.add(i);
+                }
+            }
+            assertEquals(expected, query(grid, x, y, radius));
+        }
+    }
+
+    private Set<Integer> query(SpatialGrid grid, float x, float y, float radius) {
+        IntArray result = new IntArray();
+        grid.query(x, y, radius, result);
+        Set<Integer> ids = new HashSet<>();
+        for (int i = 0; i < result.size; i++) {
+            ids.add(result.get(i));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,73 @@
+package com.tearulez.dudes.server.engine;
+
+import com.tearulez.dudes.common.snapshot.Point;
+import com.tearulez.dudes.common.snapshot.Wall;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WallIndexTest {
+    @Test
+    public void segmentsThroughAWallAreBlocked() {
+        WallIndex index = WallIndex.create(Collections.singletonList(square(10, 0, 1)));
+        assertTrue(index.isBlocked(0, 0, 20, 0));
+        assertTrue(index.isBlocked(10, -5, 10, 5));
+        // touching a corner
+        assertTrue(index.isBlocked(0, -8, 20, 12));
+        assertFalse(index.isBlocked(0, 0, 8, 0));
+        assertFalse(index.isBlocked(0, 2, 20, 2));
+    }
+
+    @Test
+    public void batchGivesTheSameResultsAsSingleQueries() {
+        WallIndex index = WallIndex.create(Collections.singletonList(square(10, 0, 1)));
+        float[] segments = {0, 0, 20, 0, 0, 2, 20, 2, 0, 0, 8, 0};
+        boolean[] blocked = new boolean[3];
+        index.areBlocked(segments, 0, 3, blocked);
+        assertTrue(blocked[0]);
+        assertFalse(blocked[1]);
+        assertFalse(blocked[2]);
+    }
+
+    @Test
+    public void treeAgreesWithCheckingEveryEdge() {
+        Random random = new Random(42);
+        List<Wall> walls = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            walls.add(square(random.nextFloat() * 200 - 100, random.nextFloat() * 200 - 100, random.nextFloat() * 3));
+        }
+        WallIndex index = WallIndex.create(walls);
+        WallIndex flat = WallIndex.create(Collections.emptyList());
+        assertEquals(800, index.getEdgeCount());
+        assertEquals(0, flat.getEdgeCount());
+        for (int i = 0; i < 1000; i++) {
+            float x1 = random.nextFloat() * 200 - 100;
+            float y1 = random.nextFloat() * 200 - 100;
+            float x2 = random.nextFloat() * 200 - 100;
+            float y2 = random.nextFloat() * 200 - 100;
+            boolean expected = false;
+            for (Wall wall : walls) {
+                expected |= WallIndex.create(Collections.singletonList(wall)).isBlocked(x1, y1, x2, y2);
+            }
+            assertEquals(expected, index.isBlocked(x1, y1, x2, y2));
+            assertFalse(flat.isBlocked(x1, y1, x2, y2));
+        }
+    }
+
+    private static Wall square(float x, float y, float halfSize) {
+        return Wall.create(Point.create(x, y), Arrays.asList(
+                Point.create(-halfSize, -halfSize),
+                Point.create(halfSize, -halfSize),
+                Point.create(halfSize, halfSize),
+                Point.create(-halfSize, halfSize)
+        ));
+    }
+}